@@ -0,0 +1,136 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.Rethrow;
+
+/**
+ * Runs the benchmarks in the {@link BenchmarkSuite} classes and prints the time
+ * per operation. Each benchmark is first calibrated so that an iteration takes
+ * about {@link #ITERATION_MILLIS} ms, then run for {@link #WARMUP_ITERATIONS}
+ * iterations that are discarded and {@link #MEASURED_ITERATIONS} that are reported.
+ * <p>
+ * 
+ * The arguments are used as filters; only benchmarks whose name (e.g.
+ * EscapeBenchmark.benchEscapePlain) contains one of them are run.
+ */
+public class BenchmarkRunner {
+	
+	/** the benchmark suites that are run */
+	private static final List<Class<? extends BenchmarkSuite>> SUITES = Empty.list();
+	static {
+		SUITES.add(DispatchBenchmark.class);
+		SUITES.add(ObjectProviderBenchmark.class);
+		SUITES.add(InputBenchmark.class);
+		SUITES.add(EscapeBenchmark.class);
+		SUITES.add(RenderBenchmark.class);
+	}
+	
+	private static final long ITERATION_MILLIS = 200;
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int MEASURED_ITERATIONS = 10;
+	
+	/** the results of the benchmarks end up here so they cannot be optimized away */
+	private static volatile int sink;
+	
+	public static void main(String[] args) throws Exception {
+		List<String> filters = Arrays.asList(args);
+		System.out.println(String.format("%-50s %12s %10s %12s", "benchmark", "ns/op", "error", "ops/s"));
+		for (Class<? extends BenchmarkSuite> c : SUITES) {
+			List<Method> benchmarks = Empty.list();
+			for (Method m : c.getMethods()) {
+				if (m.getName().startsWith("bench") && Arrays.equals(m.getParameterTypes(), new Class<?>[] { Integer.TYPE })
+						&& matches(filters, c.getSimpleName() + "." + m.getName()))
+					benchmarks.add(m);
+			}
+			if (benchmarks.isEmpty())
+				continue;
+			
+			BenchmarkSuite suite = c.newInstance();
+			suite.setUp();
+			try {
+				for (Method m : benchmarks)
+					run(suite, m);
+			} finally {
+				suite.tearDown();
+			}
+		}
+	}
+	
+	private static boolean matches(List<String> filters, String name) {
+		if (filters.isEmpty())
+			return true;
+		for (String f : filters) {
+			if (name.contains(f))
+				return true;
+		}
+		return false;
+	}
+	
+	private static void run(BenchmarkSuite suite, Method m) {
+		int n = calibrate(suite, m);
+		for (int i = 0; i < WARMUP_ITERATIONS; i++)
+			time(suite, m, n);
+		
+		double[] nsPerOp = new double[MEASURED_ITERATIONS];
+		double sum = 0;
+		for (int i = 0; i < nsPerOp.length; i++) {
+			nsPerOp[i] = (double) time(suite, m, n) / n;
+			sum += nsPerOp[i];
+		}
+		double mean = sum / nsPerOp.length;
+		double var = 0;
+		for (double d : nsPerOp)
+			var += (d - mean) * (d - mean);
+		double stddev = Math.sqrt(var / (nsPerOp.length - 1));
+		
+		System.out.println(String.format("%-50s %12.1f %10.1f %12.0f", suite.getClass().getSimpleName() + "." + m.getName(), mean, stddev, 1e9 / mean));
+	}
+	
+	/** @return the number of operations needed for an iteration to take about ITERATION_MILLIS */
+	private static int calibrate(BenchmarkSuite suite, Method m) {
+		long target = ITERATION_MILLIS * 1000 * 1000;
+		int n = 1;
+		long t;
+		while ((t = time(suite, m, n)) < target / 10 && n < Integer.MAX_VALUE / 2)
+			n *= 2;
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (double) n * target / Math.max(1, t)));
+	}
+	
+	/** @return the nanoseconds it took to run the benchmark with the given number of operations */
+	private static long time(BenchmarkSuite suite, Method m, int n) {
+		long nt = System.nanoTime();
+		Object o;
+		try {
+			o = m.invoke(suite, n);
+		} catch (InvocationTargetException e) {
+			throw Rethrow.uncheckedThrow(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		nt = System.nanoTime() - nt;
+		sink ^= System.identityHashCode(o);
+		return nt;
+	}
+
+}
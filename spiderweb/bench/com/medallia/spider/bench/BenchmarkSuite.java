@@ -0,0 +1,30 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench;
+
+/**
+ * Base class for a set of benchmarks. Each public method named bench* that takes
+ * the number of operations to perform as its only argument is a benchmark; see
+ * {@link BenchmarkRunner}. A benchmark should return an object computed from
+ * the operations so they cannot be optimized away.
+ */
+public abstract class BenchmarkSuite {
+	/** called before the benchmarks in the suite are run */
+	public void setUp() throws Exception { }
+	/** called after the benchmarks in the suite are run */
+	public void tearDown() throws Exception { }
+}
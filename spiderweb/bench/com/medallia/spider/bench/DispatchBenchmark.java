@@ -0,0 +1,81 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench;
+
+import java.util.Map;
+
+import com.medallia.spider.Task;
+import com.medallia.spider.bench.app.BenchServlet;
+import com.medallia.spider.bench.app.st.ReportTask;
+import com.medallia.spider.test.RenderTaskTestCase;
+import com.medallia.spider.test.StRenderTestCase;
+import com.medallia.spider.test.StRenderTestCase.ServletMock;
+import com.medallia.spider.test.StRenderTestCase.StRenderResult;
+import com.medallia.tiny.Empty;
+
+/**
+ * Benchmarks of whole requests through SpiderServlet.handleRequest, using the
+ * mock request and response of {@link StRenderTestCase}.
+ */
+public class DispatchBenchmark extends BenchmarkSuite {
+	
+	private static final String PAGE_URI = "/" + Task.uriNameForTask(ReportTask.class);
+	
+	private ServletMock servlet;
+	private final Map<String, String> params = Empty.hashMap();
+	
+	@Override public void setUp() throws Exception {
+		servlet = RenderTaskTestCase.newServletMock(BenchServlet.class);
+		params.put("title", "Sales & returns");
+		params.put("limit", "20");
+		params.put("order", "count");
+		params.put("tags", "north");
+		params.put("columns", "1,2,3,4");
+		String content = get(PAGE_URI, params).getStContent();
+		if (!content.contains("Sales &amp; returns") || !content.contains("Item &lt;49&gt;"))
+			throw new AssertionError("Unexpected content: " + content);
+		content = get("/style.css", Empty.<String, String>hashMap()).getStContent();
+		if (!content.startsWith("/* style sheet served by the dispatch benchmark */"))
+			throw new AssertionError("Unexpected static content: " + content);
+	}
+	
+	@Override public void tearDown() throws Exception {
+		servlet.destroy();
+	}
+	
+	private StRenderResult get(String uri, Map<String, String> params) throws Exception {
+		return StRenderTestCase.service(servlet, uri, params, null);
+	}
+	
+	/** a page with an embedded task */
+	public Object benchPage(int n) throws Exception {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = get(PAGE_URI, params).getBinaryContent();
+		return o;
+	}
+	
+	/** a static resource */
+	public Object benchStatic(int n) throws Exception {
+		Map<String, String> none = Empty.hashMap();
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = get("/style.css", none).getBinaryContent();
+		return o;
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench;
+
+import java.util.List;
+import java.util.Map;
+
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.string.HtmlString;
+import com.medallia.tiny.string.JsString;
+
+/** Benchmarks of escaping strings for HTML and JavaScript */
+public class EscapeBenchmark extends BenchmarkSuite {
+	
+	private static final String PLAIN = "The quick brown fox jumps over the lazy dog, again and again";
+	private static final String SPECIAL = "Sales & returns <Q3> for \"North\" region's stores æøå";
+	
+	private final Map<String, Object> object = Empty.hashMap();
+	
+	@Override public void setUp() {
+		List<String> names = Empty.list();
+		for (int i = 0; i < 20; i++)
+			names.add("name \"" + i + "\"\n");
+		object.put("title", SPECIAL);
+		object.put("count", 42);
+		object.put("names", names);
+	}
+	
+	/** a string that does not need escaping */
+	public Object benchHtmlPlain(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = HtmlString.escape(PLAIN);
+		return o;
+	}
+	
+	/** a string with characters that must be escaped */
+	public Object benchHtmlSpecial(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = HtmlString.escape(SPECIAL);
+		return o;
+	}
+	
+	/** a map with a list of strings that must be escaped */
+	public Object benchJsObject(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = JsString.forObject(object);
+		return o;
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import com.medallia.spider.api.DynamicInputImpl;
+import com.medallia.spider.api.StRenderable.Input;
+import com.medallia.spider.api.StRenderer.InputArgParser;
+import com.medallia.tiny.Empty;
+
+/** Benchmarks of the parsing of request parameters done by {@link DynamicInputImpl} */
+public class InputBenchmark extends BenchmarkSuite {
+	
+	/** the sort order in the request */
+	public enum Order { NAME, COUNT, CREATED, MODIFIED }
+	
+	/** declares the annotated input variables */
+	public interface Params {
+		@Input.MultiValued String[] tags();
+		@Input.List(separator=",") int[] columns();
+	}
+	
+	private DynamicInputImpl input;
+	private Method tags, columns;
+	
+	@Override public void setUp() throws Exception {
+		Map<String, String[]> params = Empty.hashMap();
+		params.put("limit", new String[] { "250" });
+		params.put("order", new String[] { "Modified" });
+		params.put("tags", new String[] { "north", "south", "east", "west" });
+		params.put("columns", new String[] { "1,2,3,4,5,6,7,8,9,10" });
+		Map<Class<?>, InputArgParser<?>> parsers = Empty.hashMap();
+		input = new DynamicInputImpl(params, parsers);
+		tags = Params.class.getMethod("tags");
+		columns = Params.class.getMethod("columns");
+	}
+	
+	/** an int */
+	public Object benchInt(int n) {
+		int s = 0;
+		for (int i = 0; i < n; i++)
+			s += input.getInput("limit", Integer.TYPE);
+		return s;
+	}
+	
+	/** an enum constant, which is matched ignoring case */
+	public Object benchEnum(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = input.getInput("order", Order.class);
+		return o;
+	}
+	
+	/** a parameter with several values */
+	public Object benchMultiValued(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = input.getInput("tags", String[].class, tags);
+		return o;
+	}
+	
+	/** a separated list of ints */
+	public Object benchList(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = input.getInput("columns", int[].class, columns);
+		return o;
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.ObjectProvider;
+
+/** Benchmarks of the lookups done by {@link ObjectProvider} */
+public class ObjectProviderBenchmark extends BenchmarkSuite {
+	
+	private ObjectProvider injector;
+	private Method method;
+	
+	/** the method the arguments are made for */
+	public void target(ArrayList<?> l, Map<?, ?> m, StringBuilder sb) { }
+	
+	@Override public void setUp() throws Exception {
+		ObjectProvider app = new ObjectProvider()
+			.register(new ArrayList<String>())
+			.register(new LinkedList<String>())
+			.register(Empty.hashMap())
+			.freeze();
+		injector = app.overlay().register(new StringBuilder()).freeze();
+		method = getClass().getMethod("target", ArrayList.class, Map.class, StringBuilder.class);
+	}
+	
+	/** lookup of a registered class */
+	public Object benchGetExact(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = injector.get(LinkedList.class);
+		return o;
+	}
+	
+	/** lookup of an interface implemented by registered classes */
+	public Object benchGetSupertype(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = (i & 1) == 0 ? injector.get(List.class) : injector.get(Collection.class);
+		return o;
+	}
+	
+	/** the arguments for a method with parameters from both the overlay and the application objects */
+	public Object benchMakeArgsFor(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++)
+			o = injector.makeArgsFor(method);
+		return o;
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.medallia.spider.MethodInvoker;
+import com.medallia.spider.api.StRenderer;
+import com.medallia.spider.api.StRenderer.StRenderPostAction;
+import com.medallia.spider.api.StRenderer.StToolProvider;
+import com.medallia.spider.api.StRenderer.StringTemplateFactory;
+import com.medallia.spider.bench.app.BenchServlet.Catalog;
+import com.medallia.spider.bench.app.st.TableTask;
+import com.medallia.spider.sttools.StTool;
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.Implement;
+import com.medallia.tiny.ObjectProvider;
+import com.medallia.tiny.string.ExplodingStringTemplateErrorListener;
+
+/** Benchmark of invoking a task and rendering its template through {@link StRenderer} */
+public class RenderBenchmark extends BenchmarkSuite {
+	
+	private static final Pattern CLASS_NAME_PREFIX_PATTERN = Pattern.compile(".*\\.(.+)Task.*");
+	
+	private final Catalog catalog = new Catalog();
+	private final ObjectProvider injector = new ObjectProvider().freeze();
+	private final Map<String, String[]> params = Empty.hashMap();
+	private StringTemplateFactory factory;
+	
+	@Override public void setUp() {
+		factory = StRenderer.makeStringTemplateFactory(ExplodingStringTemplateErrorListener.LISTENER, new StToolProvider() {
+			@Implement public StTool getStTool(String name) {
+				return null;
+			}
+		});
+		// as in production mode, the templates are not reloaded
+		factory.setRefreshInterval(Integer.MAX_VALUE / 1000);
+	}
+	
+	/** the embedded table of the report page */
+	public Object benchTable(int n) {
+		Object o = null;
+		for (int i = 0; i < n; i++) {
+			StRenderer renderer = new StRenderer(factory, new TableTask(catalog)) {
+				@Override protected Pattern getClassNamePrefixPattern() {
+					return CLASS_NAME_PREFIX_PATTERN;
+				}
+				@Override protected String getPageRelativePath() {
+					return "embedded/";
+				}
+			};
+			o = ((StRenderPostAction) renderer.actionAndRender(injector, MethodInvoker.getLifecycleHandlerSet(), params)).getStContent();
+		}
+		return o;
+	}
+
+}
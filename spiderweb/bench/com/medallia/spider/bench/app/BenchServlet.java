@@ -0,0 +1,49 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench.app;
+
+import com.medallia.spider.SpiderServlet;
+import com.medallia.tiny.ObjectProvider;
+
+/** Servlet used by the benchmarks; it runs in production mode */
+public class BenchServlet extends SpiderServlet {
+	
+	/** Application object injected into the tasks */
+	public static class Catalog {
+		/** @return the names of the items in the catalog */
+		public String[] getItems() {
+			String[] items = new String[50];
+			for (int i = 0; i < items.length; i++)
+				items[i] = "Item <" + i + "> & co";
+			return items;
+		}
+	}
+	
+	/** constructor that turns off debug mode */
+	public BenchServlet() {
+		setDebugMode(false);
+	}
+	
+	@Override protected String getDefaultURI() {
+		return "report";
+	}
+	
+	@Override protected void registerApplicationObjects(ObjectProvider injector) {
+		injector.register(new Catalog());
+	}
+
+}
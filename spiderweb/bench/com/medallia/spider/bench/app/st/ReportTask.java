@@ -0,0 +1,71 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench.app.st;
+
+import java.util.Collection;
+
+import com.medallia.spider.EmbeddedRenderTask;
+import com.medallia.spider.RenderTask;
+import com.medallia.spider.bench.app.BenchServlet.Catalog;
+
+/** Page with request parameters and an embedded task */
+public class ReportTask extends RenderTask {
+	
+	/** the sort order of the report */
+	public enum Order { NAME, COUNT }
+	
+	@Input interface Params {
+		String title();
+		int limit();
+		Order order();
+		@Input.MultiValued String[] tags();
+		@Input.List(separator=",") int[] columns();
+	}
+	
+	@Output interface Values {
+		V<String> TITLE = v();
+		V<Integer> LIMIT = v();
+		V<Order> ORDER = v();
+		V<Integer> TAG_COUNT = v();
+		V<Integer> COLUMN_COUNT = v();
+	}
+	
+	private final Catalog catalog;
+	
+	/** @param catalog injected */
+	public ReportTask(Catalog catalog) {
+		this.catalog = catalog;
+	}
+	
+	PostAction action(Params p) {
+		attr(Values.TITLE, p.title());
+		attr(Values.LIMIT, p.limit());
+		attr(Values.ORDER, p.order());
+		attr(Values.TAG_COUNT, p.tags().length);
+		attr(Values.COLUMN_COUNT, p.columns() == null ? 0 : p.columns().length);
+		return null;
+	}
+	
+	@Override public Collection<EmbeddedRenderTask> dependsOn() {
+		return with(new TableTask(catalog));
+	}
+	
+	@Override public String getPageTitle() {
+		return "Report";
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.bench.app.st;
+
+import java.util.List;
+
+import com.medallia.spider.EmbeddedRenderTask;
+import com.medallia.spider.Task;
+import com.medallia.spider.bench.app.BenchServlet.Catalog;
+import com.medallia.tiny.Empty;
+
+/** Embedded task that renders a table which needs escaping */
+public class TableTask extends Task implements EmbeddedRenderTask {
+	
+	/** A row of the table */
+	public static class Row {
+		private final String name;
+		private final int count;
+		Row(String name, int count) {
+			this.name = name;
+			this.count = count;
+		}
+		/** @return the name of the item */
+		public String getName() { return name; }
+		/** @return the number of items */
+		public int getCount() { return count; }
+	}
+	
+	@Output interface Values {
+		V<List<Row>> ROWS = v();
+	}
+	
+	private final Catalog catalog;
+	
+	/** @param catalog the items shown in the table */
+	public TableTask(Catalog catalog) {
+		this.catalog = catalog;
+	}
+	
+	PostAction action() {
+		List<Row> rows = Empty.list();
+		String[] items = catalog.getItems();
+		for (int i = 0; i < items.length; i++)
+			rows.add(new Row(items[i], i * 7));
+		attr(Values.ROWS, rows);
+		return null;
+	}
+	
+	public String getStAttribute() {
+		return "table";
+	}
+
+}
@@ -16,6 +16,11 @@
  */
 package com.medallia.spider;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
 /**
  * Interface for tasks that render content which is embedded
  * in the content of a {@link IRenderTask}.
@@ -32,10 +37,41 @@ package com.medallia.spider;
  * 
  * This feature can be used for including a component on several pages,
  * e.g. a heading, menu and footer.
+ * <p>
+ * 
+ * The rendered content of tasks annotated with {@link Cached} is reused
+ * for other requests; this is useful for components which are shown on
+ * many pages but rarely change.
  */
 public interface EmbeddedRenderTask extends ITask {
 	
 	/** @return the name of the StringTemplate attribute in which the rendered content will be placed */ 
 	String getStAttribute();
+	
+	/**
+	 * Annotation for an embedded task whose rendered content can be reused by other
+	 * requests. The content is cached by the class of the task, the name returned by
+	 * {@link EmbeddedRenderTask#getStAttribute()}, the values of the request parameters
+	 * named by the methods of its Input interface and the values of the given cookies;
+	 * the task must thus not depend on anything else, such as
+	 * arguments to its constructor or the logged in user. The action method is not called
+	 * when the cached content is used, so any cookies it sets are not set either.
+	 * <p>
+	 * 
+	 * The cache is disabled in debug mode.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	public @interface Cached {
+		/** @return the number of seconds the rendered content is used before it is rendered again */
+		int ttlSeconds();
+		/**
+		 * @return the number of seconds after the content expires during which it is still used
+		 * while a single request renders it again
+		 */
+		int staleSeconds() default 0;
+		/** @return names of the cookies the content depends on */
+		String[] cookies() default {};
+	}
 
 }
@@ -0,0 +1,211 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.medallia.spider.EmbeddedRenderTask.Cached;
+import com.medallia.spider.SpiderServlet.RequestHandler;
+import com.medallia.spider.api.StRenderer;
+import com.medallia.tiny.Clock;
+import com.medallia.tiny.Empty;
+
+/**
+ * Cache of the content rendered by the {@link EmbeddedRenderTask} classes annotated
+ * with {@link Cached}. The least recently used entries are removed when the total
+ * length of the cached content exceeds the given maximum.
+ * <p>
+ * 
+ * When an entry has expired, but is still within its stale period, the first request
+ * to see it renders the content again while the other requests keep using the old
+ * content. The content is always rendered on the thread of a request, so the objects
+ * injected into the task are the ones registered for that request.
+ */
+class FragmentCache {
+
+	/** Renders the content of a task */
+	interface Renderer {
+		/** @return the rendered content */
+		String render();
+	}
+	
+	/** Rendered content and when it expires */
+	private static class Entry {
+		private final String content;
+		/** time at which the content should be rendered again */
+		private final long expires;
+		/** time after which the content is no longer used */
+		private final long staleUntil;
+		/** true if a request is rendering the content again; guarded by the cache */
+		private boolean refreshing;
+		Entry(String content, long expires, long staleUntil) {
+			this.content = content;
+			this.expires = expires;
+			this.staleUntil = staleUntil;
+		}
+	}
+	
+	private final int maxChars;
+	
+	/** map from key to entry, in access order; guarded by itself */
+	private final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private int cachedChars;
+	private volatile boolean enabled = true;
+	
+	/** @param maxChars maximum total length of the cached content */
+	FragmentCache(int maxChars) {
+		this.maxChars = maxChars;
+	}
+	
+	/** Turn the cache on or off; this clears the cache */
+	void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		synchronized (cache) {
+			cache.clear();
+			cachedChars = 0;
+		}
+	}
+	
+	/** @return the annotation that allows the content of the given task to be cached, or null if it should not be cached */
+	Cached getCached(EmbeddedRenderTask t) {
+		return enabled ? t.getClass().getAnnotation(Cached.class) : null;
+	}
+	
+	/** @return the key the content of the given task is cached under */
+	static String makeKey(EmbeddedRenderTask t, Cached c, Map<String, String[]> reqParams, RequestHandler request) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(t.getClass().getName()).append('\0').append(t.getStAttribute());
+		for (String p : getParamNames(t.getClass()))
+			appendValue(sb, reqParams.get(p));
+		for (String cookie : c.cookies())
+			appendValue(sb, request.getCookieValue(cookie));
+		return sb.toString();
+	}
+	
+	/** the names of the request parameters a task depends on, for each task class */
+	private static final ConcurrentMap<Class<?>, String[]> PARAM_NAMES = Empty.concurrentMap();
+	
+	/**
+	 * @return the names of the request parameters the given task class depends on, which are
+	 * the names of the methods of its Input interface, in sorted order
+	 */
+	static String[] getParamNames(Class<?> taskClass) {
+		String[] names = PARAM_NAMES.get(taskClass);
+		if (names == null) {
+			Class<?> input = StRenderer.findInputInterface(taskClass);
+			if (input == null) {
+				names = new String[0];
+			} else {
+				Method[] methods = input.getMethods();
+				names = new String[methods.length];
+				for (int i = 0; i < methods.length; i++)
+					names[i] = methods[i].getName();
+				// the order of the methods is unspecified
+				Arrays.sort(names);
+			}
+			PARAM_NAMES.put(taskClass, names);
+		}
+		return names;
+	}
+	
+	/**
+	 * Append the given value of a request parameter or cookie to a cache key
+	 * @param o null, String or String[]; the map of request parameters may hold
+	 * either, as handled by the Input interface
+	 */
+	static void appendValue(StringBuilder sb, Object o) {
+		sb.append('\0');
+		if (o instanceof String[]) {
+			for (String v : (String[]) o)
+				sb.append('\1').append(v);
+		} else if (o != null) {
+			sb.append('\1').append(o);
+		}
+	}
+	
+	/**
+	 * @return the content cached for the given key, or the content returned by the renderer
+	 * (which is then cached) if there is no usable entry
+	 */
+	String get(String key, Cached c, Renderer renderer) {
+		long now = Clock.timeMillis();
+		Entry e;
+		synchronized (cache) {
+			e = cache.get(key);
+			if (e != null) {
+				if (now < e.expires)
+					return e.content;
+				if (now < e.staleUntil) {
+					if (e.refreshing)
+						return e.content;
+					e.refreshing = true;
+				}
+			}
+		}
+		boolean added = false;
+		try {
+			String content = renderer.render();
+			now = Clock.timeMillis();
+			long expires = now + c.ttlSeconds() * 1000L;
+			add(key, new Entry(content, expires, expires + c.staleSeconds() * 1000L));
+			added = true;
+			return content;
+		} finally {
+			// let another request try if rendering failed
+			if (!added && e != null) {
+				synchronized (cache) {
+					e.refreshing = false;
+				}
+			}
+		}
+	}
+	
+	private void add(String key, Entry e) {
+		if (!enabled)
+			return;
+		boolean fits = e.content.length() <= maxChars;
+		synchronized (cache) {
+			// content which is too large to be cached still replaces the old entry
+			Entry old = fits ? cache.put(key, e) : cache.remove(key);
+			if (old != null)
+				cachedChars -= old.content.length();
+			if (!fits)
+				return;
+			cachedChars += e.content.length();
+			
+			Iterator<Entry> it = cache.values().iterator();
+			while (cachedChars > maxChars) {
+				Entry eldest = it.next();
+				it.remove();
+				cachedChars -= eldest.content.length();
+			}
+		}
+	}
+	
+	/** @return the number of cached entries */
+	int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.medallia.spider.EmbeddedRenderTask.Cached;
+import com.medallia.spider.SpiderServlet.RequestHandler;
+import com.medallia.tiny.Clock;
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.Implement;
+
+/** Tests for {@link FragmentCache} */
+public class FragmentCacheTest extends TestCase {
+	
+	@Cached(ttlSeconds = 60, staleSeconds = 30, cookies = { "region" })
+	private static class NewsTask extends Task implements EmbeddedRenderTask {
+		@Input interface Params { String lang(); }
+		@Implement public String getStAttribute() { return "news"; }
+	}
+	
+	private final Cached cached = NewsTask.class.getAnnotation(Cached.class);
+	private int renders;
+	
+	@Override protected void tearDown() throws Exception {
+		Clock.setOffset(0);
+	}
+	
+	private FragmentCache.Renderer renderer(final String content) {
+		return new FragmentCache.Renderer() {
+			@Implement public String render() {
+				renders++;
+				return content;
+			}
+		};
+	}
+	
+	/** content is reused until it expires */
+	public void testTtl() {
+		FragmentCache fc = new FragmentCache(1000);
+		assertEquals("a", fc.get("k", cached, renderer("a")));
+		assertEquals("a", fc.get("k", cached, renderer("b")));
+		assertEquals(1, renders);
+		
+		Clock.setOffset(91 * 1000);
+		assertEquals("c", fc.get("k", cached, renderer("c")));
+		assertEquals(2, renders);
+	}
+	
+	/** stale content is used by other requests while one request renders it again */
+	public void testStaleWhileRevalidate() {
+		final FragmentCache fc = new FragmentCache(1000);
+		fc.get("k", cached, renderer("a"));
+		Clock.setOffset(70 * 1000);
+		String s = fc.get("k", cached, new FragmentCache.Renderer() {
+			@Implement public String render() {
+				// another request while this one is rendering
+				assertEquals("a", fc.get("k", cached, renderer("x")));
+				return "b";
+			}
+		});
+		assertEquals("b", s);
+		assertEquals(1, renders);
+		assertEquals("b", fc.get("k", cached, renderer("c")));
+	}
+	
+	/** if rendering the content again fails the next request tries again */
+	public void testFailedRefresh() {
+		FragmentCache fc = new FragmentCache(1000);
+		fc.get("k", cached, renderer("a"));
+		Clock.setOffset(70 * 1000);
+		try {
+			fc.get("k", cached, new FragmentCache.Renderer() {
+				@Implement public String render() {
+					throw new IllegalStateException();
+				}
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals("b", fc.get("k", cached, renderer("b")));
+	}
+	
+	/** the least recently used content is removed when the cache is full */
+	public void testEviction() {
+		FragmentCache fc = new FragmentCache(10);
+		fc.get("a", cached, renderer("aaaa"));
+		fc.get("b", cached, renderer("bbbb"));
+		fc.get("a", cached, renderer("x"));
+		fc.get("c", cached, renderer("cccc"));
+		assertEquals(2, fc.size());
+		assertEquals("aaaa", fc.get("a", cached, renderer("x")));
+		assertEquals("y", fc.get("b", cached, renderer("y")));
+		assertEquals(4, renders);
+		
+		// content larger than the cache is not cached
+		fc.get("d", cached, renderer("ddddddddddd"));
+		fc.get("d", cached, renderer("d"));
+		assertEquals(6, renders);
+	}
+	
+	/** the key only includes the parameters of the Input interface and the given cookies */
+	public void testKey() {
+		final Map<String, String> cookies = Empty.hashMap();
+		RequestHandler request = new RequestHandler() {
+			@Implement public String getCookieValue(String name) { return cookies.get(name); }
+			@Implement public void setCookieValue(String name, String value) { }
+			@Implement public void setPersistentCookieValue(String name, String value, int expiry) { }
+			@Implement public void removeCookieValue(String name) { }
+		};
+		Map<String, String[]> params = Empty.hashMap();
+		NewsTask t = new NewsTask();
+		String k1 = FragmentCache.makeKey(t, cached, params, request);
+		params.put("page", new String[] { "2" });
+		assertEquals(k1, FragmentCache.makeKey(t, cached, params, request));
+		params.put("lang", new String[] { "en" });
+		String k2 = FragmentCache.makeKey(t, cached, params, request);
+		assertFalse(k1.equals(k2));
+		cookies.put("region", "eu");
+		assertFalse(k2.equals(FragmentCache.makeKey(t, cached, params, request)));
+	}
+	
+	/** nothing is cached when disabled */
+	public void testDisabled() {
+		FragmentCache fc = new FragmentCache(1000);
+		assertNotNull(fc.getCached(new NewsTask()));
+		fc.setEnabled(false);
+		assertNull(fc.getCached(new NewsTask()));
+	}
+
+}
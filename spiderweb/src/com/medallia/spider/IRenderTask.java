@@ -16,6 +16,10 @@
  */
 package com.medallia.spider;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 
 /**
  * Each URI maps to a RenderTask that renders a page. See
@@ -28,5 +32,50 @@ public interface IRenderTask extends ITask {
 	
 	/** title of the html page */
 	String getPageTitle();
+	
+	/**
+	 * Annotation for a task whose whole response can be reused for other GET requests.
+	 * The response is cached by the class of the task, the values of the request parameters
+	 * named by the methods of its Input interface and the values of the given cookies; the
+	 * page, including its embedded tasks, must thus not depend on anything else. A response
+	 * is not cached if the task sets a cookie or its action returns anything but the
+	 * rendered template.
+	 * <p>
+	 * 
+	 * Pages can be removed from the cache before they expire by calling {@link PageCache},
+	 * which can be injected into any task. The cache is disabled in debug mode.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	public @interface CachedPage {
+		/** @return the number of seconds the response is reused */
+		int ttlSeconds();
+		/** @return names of the cookies the response depends on */
+		String[] cookies() default {};
+		/** @return true if the response should also be kept compressed with gzip */
+		boolean gzip() default true;
+	}
+	
+	/**
+	 * Annotation for a task whose response to concurrent GET requests with the same
+	 * parameters can be shared: while the task is rendered for one request, identical
+	 * requests wait for it and are sent the same response. Requests are identical if
+	 * they have the same values for the request parameters named by the methods of the
+	 * Input interface and for the given cookies, as for {@link CachedPage}, which the
+	 * same restrictions thus apply to. If the task sets a cookie or its action returns
+	 * anything but the rendered template, the waiting requests render the task themselves.
+	 * <p>
+	 * 
+	 * The waiting requests fail if rendering the task fails, or if it takes longer
+	 * than the given timeout. Requests are not coalesced in debug mode.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	public @interface Coalesced {
+		/** @return the maximum number of milliseconds a request waits for the response of an identical request */
+		long timeoutMillis() default 30000;
+		/** @return names of the cookies the response depends on */
+		String[] cookies() default {};
+	}
 
 }
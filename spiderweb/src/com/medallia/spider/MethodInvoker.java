@@ -3,14 +3,15 @@ package com.medallia.spider;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 
-import com.medallia.tiny.CollUtils;
 import com.medallia.tiny.Empty;
 import com.medallia.tiny.Implement;
 import com.medallia.tiny.ObjectProvider;
+import com.medallia.tiny.ObjectProvider.ArgsPlan;
 import com.medallia.tiny.Rethrow;
 
 /**
@@ -67,8 +68,13 @@ public class MethodInvoker {
 	/** @return the object created by invoking the given constructor
 	 * Note: any exception thrown by the constructor is thrown unchecked by this method.
 	 */
-	public <X> X invoke(final Constructor<X> cons) {
-		final Object[] consArgs = injector.makeArgsFor(cons);
+	public <X> X invoke(Constructor<X> cons) {
+		return invoke(cons, ObjectProvider.argsPlanFor(cons));
+	}
+	
+	/** Same as {@link #invoke(Constructor)}, but with the {@link ArgsPlan} of the constructor obtained in advance */
+	public <X> X invoke(final Constructor<X> cons, ArgsPlan plan) {
+		final Object[] consArgs = injector.makeArgsFor(plan);
 		return invoke(consArgs, new Callable<X>(){
 			@Implement public X call() throws Exception {
 				try {
@@ -83,8 +89,13 @@ public class MethodInvoker {
 	/** @return the object returned from invoking the given method on the given object
 	 * Note: any exception thrown by the constructor is thrown unchecked by this method.
 	 */
-	public Object invoke(final Method m, final Object obj) {
-		final Object[] args = injector.makeArgsFor(m);
+	public Object invoke(Method m, Object obj) {
+		return invoke(m, ObjectProvider.argsPlanFor(m), obj);
+	}
+	
+	/** Same as {@link #invoke(Method, Object)}, but with the {@link ArgsPlan} of the method obtained in advance */
+	public Object invoke(final Method m, ArgsPlan plan, final Object obj) {
+		final Object[] args = injector.makeArgsFor(plan);
 		return invoke(args, new Callable<Object>(){
 			@Implement public Object call() throws Exception {
 				try {
@@ -96,72 +107,105 @@ public class MethodInvoker {
 		});
 	}
 	
-	/** Wrapper for an object and its {@link LifecycleHandler} */
-	private interface BoundLifecycleHandler {
-		void onInit();
-		void onError(Throwable t);
-		void onSuccess();
-	}
-	
 	private <X> X invoke(Object[] args, Callable<X> c) {
-		List<BoundLifecycleHandler> hl = findLifecycleHandlers(args);
 		try {
-			return invoke(hl, args, c);
+			if (handlers.isEmpty())
+				return c.call();
+			
+			// find the handlers for the arguments; the handler for objs[i] is hs[i]
+			Map<Class<?>, Class<?>> handlerKeys = findHandlerKeys(handlers.keySet());
+			Object[] objs = new Object[args.length];
+			LifecycleHandler<?>[] hs = new LifecycleHandler<?>[args.length];
+			int n = 0;
+			for (Object o : args) {
+				if (o == null) continue;
+				Class<?> k = findHandlerKey(handlerKeys, o.getClass());
+				if (k != NO_HANDLER) {
+					objs[n] = o;
+					hs[n++] = handlers.get(k);
+				}
+			}
+			return invoke(objs, hs, n, c);
 		} catch (Exception e) {
 			// Work around Java's type system
 			throw Rethrow.uncheckedThrow(e);
 		}
 	}
 	
-	private <X> X invoke(List<BoundLifecycleHandler> hl, Object[] args, Callable<X> c) throws Exception {
-		if (hl.isEmpty()) {
-			return c.call();
-		} else {
-			BoundLifecycleHandler h = CollUtils.first(hl);
-			h.onInit();
-			X x;
-			try {
-				x = invoke(CollUtils.tail(hl), args, c);
-			} catch (Throwable t) {
+	/**
+	 * Call the given Callable with the first n handlers wrapped around it: onInit is called in order,
+	 * and onSuccess or onError in reverse order. A handler whose onInit completed gets onError if
+	 * the call or any handler inside it fails.
+	 */
+	private <X> X invoke(Object[] objs, LifecycleHandler<?>[] hs, int n, Callable<X> c) throws Exception {
+		// number of handlers whose onInit has completed and which have not yet been notified of the outcome
+		int entered = 0;
+		try {
+			while (entered < n) {
+				onInit(hs[entered], objs[entered]);
+				entered++;
+			}
+			X x = c.call();
+			while (entered > 0) {
+				entered--;
+				onSuccess(hs[entered], objs[entered]);
+			}
+			return x;
+		} catch (Throwable t) {
+			while (entered > 0) {
+				entered--;
 				try {
-					h.onError(t);
+					onError(hs[entered], objs[entered], t);
 				} catch (Throwable nested) {
 					// ignore these
 				}
-				throw Rethrow.uncheckedThrow(t);
 			}
-			h.onSuccess();
-			return x;
+			throw Rethrow.uncheckedThrow(t);
 		}
 	}
 	
-	private List<BoundLifecycleHandler> findLifecycleHandlers(Object[] args) {
-		List<BoundLifecycleHandler> l = Empty.list();
-		for (Object o : args) {
-			LifecycleHandler<?> h = findHandler(o);
-			if (h != null)
-				l.add(bind(o, h));
+	@SuppressWarnings("unchecked")
+	private static <X> void onInit(LifecycleHandler<X> h, Object o) { h.onInit((X) o); }
+	@SuppressWarnings("unchecked")
+	private static <X> void onSuccess(LifecycleHandler<X> h, Object o) { h.onSuccess((X) o); }
+	@SuppressWarnings("unchecked")
+	private static <X> void onError(LifecycleHandler<X> h, Object o, Throwable t) { h.onError((X) o, t); }
+	
+	/** Marker for classes that do not have a handler */
+	private static final class NoHandler { }
+	private static final Class<?> NO_HANDLER = NoHandler.class;
+	
+	/**
+	 * Map from a set of classes handlers are registered for to a map from the class of an
+	 * argument to the registered class that matches it (or NO_HANDLER). The handlers are
+	 * registered for each request, but the set of classes is almost always the same, so
+	 * this avoids checking all the registered classes for each argument of each invocation.
+	 */
+	private static final ConcurrentMap<Set<Class<?>>, ConcurrentMap<Class<?>, Class<?>>> HANDLER_KEYS_MAP = Empty.concurrentMap();
+	
+	private static ConcurrentMap<Class<?>, Class<?>> findHandlerKeys(Set<Class<?>> registered) {
+		ConcurrentMap<Class<?>, Class<?>> m = HANDLER_KEYS_MAP.get(registered);
+		if (m == null) {
+			ConcurrentMap<Class<?>, Class<?>> old = HANDLER_KEYS_MAP.putIfAbsent(Empty.hashSet(registered), m = Empty.<Class<?>, Class<?>>concurrentMap());
+			if (old != null) m = old;
 		}
-		return l;
+		return m;
 	}
-
-	private LifecycleHandler<?> findHandler(Object o) {
-		Class<?> c = o.getClass();
-		for (Map.Entry<Class<?>, LifecycleHandler<?>> me : handlers.entrySet()) {
-			if (me.getKey().isAssignableFrom(c))
-				return me.getValue();
+	
+	/** @return the registered class that matches the given class, or NO_HANDLER if none does */
+	private Class<?> findHandlerKey(Map<Class<?>, Class<?>> handlerKeys, Class<?> c) {
+		Class<?> k = handlerKeys.get(c);
+		if (k == null) {
+			k = NO_HANDLER;
+			for (Class<?> h : handlers.keySet()) {
+				if (h.isAssignableFrom(c)) {
+					k = h;
+					break;
+				}
+			}
+			handlerKeys.put(c, k);
 		}
-		return null;
-	}
-
-	private <X> BoundLifecycleHandler bind(Object o, final LifecycleHandler<X> h) {
-		@SuppressWarnings("unchecked")
-		final X x = (X) o;
-		return new BoundLifecycleHandler() {
-			@Implement public void onInit() { h.onInit(x); }
-			@Implement public void onError(Throwable t) { h.onError(x, t); }
-			@Implement public void onSuccess() { h.onSuccess(x); }
-		};
+		return k;
 	}
 
 }
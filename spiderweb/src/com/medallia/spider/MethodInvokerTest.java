@@ -0,0 +1,95 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.medallia.spider.MethodInvoker.LifecycleHandler;
+import com.medallia.spider.MethodInvoker.LifecycleHandlerSet;
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.Implement;
+import com.medallia.tiny.ObjectProvider;
+
+/** Tests for the order in which {@link MethodInvoker} calls the {@link LifecycleHandler} objects */
+public class MethodInvokerTest extends TestCase {
+	
+	/** target of the invocations */
+	public static class Target {
+		public String ok(StringBuilder sb, ArrayList<String> l) { return "ok"; }
+		public String fail(StringBuilder sb, ArrayList<String> l) { throw new IllegalStateException("fail"); }
+	}
+	
+	private final List<String> log = Empty.list();
+	
+	private <X> LifecycleHandler<X> handler(final String name, final boolean failOnSuccess) {
+		return new LifecycleHandler<X>() {
+			@Implement public void onInit(X x) { log.add(name + ".init"); }
+			@Implement public void onError(X x, Throwable t) { log.add(name + ".error:" + t.getMessage()); }
+			@Implement public void onSuccess(X x) {
+				log.add(name + ".success");
+				if (failOnSuccess) throw new IllegalStateException(name);
+			}
+		};
+	}
+	
+	private Object invoke(String method, boolean failOnSuccess) throws Exception {
+		ObjectProvider op = new ObjectProvider().register(new StringBuilder()).register(new ArrayList<String>());
+		LifecycleHandlerSet hs = MethodInvoker.getLifecycleHandlerSet();
+		hs.register(CharSequence.class, this.<CharSequence>handler("cs", false));
+		@SuppressWarnings("rawtypes")
+		LifecycleHandler<List> listHandler = handler("list", failOnSuccess);
+		hs.register(List.class, listHandler);
+		Method m = Target.class.getMethod(method, StringBuilder.class, ArrayList.class);
+		return new MethodInvoker(op, hs).invoke(m, new Target());
+	}
+	
+	/** test that the handlers are called in nested order when the invocation succeeds */
+	public void testSuccess() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			log.clear();
+			assertEquals("ok", invoke("ok", false));
+			assertEquals("[cs.init, list.init, list.success, cs.success]", log.toString());
+		}
+	}
+	
+	/** test that all handlers get onError when the invocation fails */
+	public void testError() throws Exception {
+		try {
+			invoke("fail", false);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals("[cs.init, list.init, list.error:fail, cs.error:fail]", log.toString());
+	}
+	
+	/** test that the outer handlers get onError when an inner onSuccess fails */
+	public void testErrorInHandler() throws Exception {
+		try {
+			invoke("ok", true);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("list", e.getMessage());
+		}
+		assertEquals("[cs.init, list.init, list.success, cs.error:list]", log.toString());
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.medallia.spider.IRenderTask.CachedPage;
+import com.medallia.spider.IRenderTask.Coalesced;
+import com.medallia.tiny.Clock;
+import com.medallia.tiny.web.HttpHeaders;
+
+/**
+ * Cache of the responses of the tasks annotated with {@link CachedPage}. The
+ * least recently used pages are removed when their total size exceeds the given
+ * maximum. The keys are also used to find identical requests for the tasks
+ * annotated with {@link Coalesced}.
+ * <p>
+ * 
+ * The cache is registered as an application object, so a task which changes the
+ * data shown on cached pages can have it injected and call {@link #invalidate(Class)}.
+ */
+public class PageCache {
+	
+	/** The encoded response of a task */
+	static class Page {
+		private final Class<?> taskClass;
+		private final String contentType;
+		private final byte[] content;
+		/** the content compressed with gzip, or null if it should be sent uncompressed */
+		private final byte[] gzipped;
+		private final long expires;
+		Page(Class<?> taskClass, String contentType, byte[] content, byte[] gzipped, long expires) {
+			this.taskClass = taskClass;
+			this.contentType = contentType;
+			this.content = content;
+			this.gzipped = gzipped;
+			this.expires = expires;
+		}
+		int size() {
+			return content.length + (gzipped != null ? gzipped.length : 0);
+		}
+		/** @return the class of the task that rendered the page */
+		Class<?> getTaskClass() {
+			return taskClass;
+		}
+	}
+	
+	private final int maxBytes;
+	
+	/** map from key to page, in access order; guarded by itself */
+	private final Map<String, Page> cache = new LinkedHashMap<String, Page>(16, 0.75f, true);
+	private int cachedBytes;
+	/** incremented when pages are invalidated, so pages rendered before that are not cached; guarded by the cache */
+	private long generation;
+	private volatile boolean enabled = true;
+	
+	/** @param maxBytes maximum total size of the cached pages */
+	PageCache(int maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+	
+	/** Turn the cache on or off; this clears the cache */
+	void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		invalidateAll();
+	}
+	
+	/** Remove the pages of the given task from the cache */
+	public void invalidate(Class<? extends ITask> taskClass) {
+		synchronized (cache) {
+			generation++;
+			Iterator<Page> it = cache.values().iterator();
+			while (it.hasNext()) {
+				Page p = it.next();
+				if (p.taskClass == taskClass) {
+					it.remove();
+					cachedBytes -= p.size();
+				}
+			}
+		}
+	}
+	
+	/** Remove all pages from the cache */
+	public void invalidateAll() {
+		synchronized (cache) {
+			generation++;
+			cache.clear();
+			cachedBytes = 0;
+		}
+	}
+	
+	/**
+	 * @return the key the response of the given task to the given request is cached under,
+	 * which is also used to find identical requests for tasks annotated with {@link Coalesced};
+	 * null if the response should not be cached or shared
+	 */
+	String makeKey(Class<?> taskClass, HttpServletRequest req) {
+		if (!enabled || !"GET".equals(req.getMethod()))
+			return null;
+		CachedPage c = taskClass.getAnnotation(CachedPage.class);
+		Coalesced co = taskClass.getAnnotation(Coalesced.class);
+		if (c == null && co == null)
+			return null;
+		
+		@SuppressWarnings("unchecked")
+		Map<String, String[]> reqParams = req.getParameterMap();
+		StringBuilder sb = new StringBuilder(taskClass.getName());
+		for (String p : FragmentCache.getParamNames(taskClass))
+			FragmentCache.appendValue(sb, reqParams.get(p));
+		if (c != null)
+			appendCookies(sb, req, c.cookies());
+		if (co != null)
+			appendCookies(sb, req, co.cookies());
+		return sb.toString();
+	}
+	
+	private static void appendCookies(StringBuilder sb, HttpServletRequest req, String[] names) {
+		if (names.length > 0) {
+			Cookie[] cookies = req.getCookies();
+			for (String name : names)
+				FragmentCache.appendValue(sb, findCookieValue(cookies, name));
+		}
+	}
+	
+	private static String findCookieValue(Cookie[] cookies, String name) {
+		if (cookies != null) {
+			for (Cookie c : cookies) {
+				if (c.getName().equals(name))
+					return c.getValue();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Write the page cached for the given key to the response
+	 * @return false if there is no such page, in which case nothing is written
+	 */
+	boolean serve(String key, HttpServletRequest req, HttpServletResponse res) throws IOException {
+		Page p;
+		synchronized (cache) {
+			p = cache.get(key);
+		}
+		if (p == null || Clock.timeMillis() >= p.expires)
+			return false;
+		
+		write(p, req, res);
+		return true;
+	}
+	
+	/** Write the given page to the response */
+	void write(Page p, HttpServletRequest req, HttpServletResponse res) throws IOException {
+		HttpHeaders.addNoCacheHeaders(res);
+		if (p.contentType != null)
+			res.setContentType(p.contentType);
+		res.setHeader("Vary", "Accept-Encoding");
+		byte[] body = p.content;
+		if (p.gzipped != null && HttpHeaders.acceptsEncoding(req, "gzip")) {
+			res.setHeader("Content-Encoding", "gzip");
+			body = p.gzipped;
+		}
+		res.setContentLength(body.length);
+		res.getOutputStream().write(body);
+	}
+	
+	/** @return the current generation, which must be passed to {@link #put} for the page rendered next */
+	long getGeneration() {
+		synchronized (cache) {
+			return generation;
+		}
+	}
+	
+	/**
+	 * Cache the given response of the given task if it is annotated with {@link CachedPage},
+	 * unless pages have been invalidated since the given generation
+	 * @return the page, which can be passed to {@link #write}
+	 */
+	Page put(String key, long generation, Class<?> taskClass, String contentType, byte[] content) {
+		CachedPage c = taskClass.getAnnotation(CachedPage.class);
+		byte[] gzipped = c == null || c.gzip() ? gzip(content) : null;
+		Page p = new Page(taskClass, contentType, content, gzipped, c != null ? Clock.timeMillis() + c.ttlSeconds() * 1000L : 0);
+		if (c == null || !enabled || p.size() > maxBytes)
+			return p;
+		
+		synchronized (cache) {
+			if (generation != this.generation)
+				return p;
+			Page old = cache.put(key, p);
+			if (old != null)
+				cachedBytes -= old.size();
+			cachedBytes += p.size();
+			
+			Iterator<Page> it = cache.values().iterator();
+			while (cachedBytes > maxBytes) {
+				Page eldest = it.next();
+				it.remove();
+				cachedBytes -= eldest.size();
+			}
+		}
+		return p;
+	}
+	
+	/** @return the given content compressed with gzip, or null if that is not smaller */
+	private static byte[] gzip(byte[] content) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length / 2);
+		try {
+			GZIPOutputStream out = new GZIPOutputStream(buffer);
+			out.write(content);
+			out.close();
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return buffer.size() < content.length ? buffer.toByteArray() : null;
+	}
+	
+	/** @return the number of cached pages */
+	int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import junit.framework.TestCase;
+
+import com.medallia.spider.IRenderTask.CachedPage;
+import com.medallia.spider.IRenderTask.Coalesced;
+import com.medallia.spider.test.StRenderTestCase;
+import com.medallia.tiny.Clock;
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.Implement;
+
+/** Tests for {@link PageCache} */
+public class PageCacheTest extends TestCase {
+	
+	@CachedPage(ttlSeconds = 60, cookies = { "lang" }, gzip = false)
+	private static class NewsTask extends RenderTask {
+		@Input interface Params { int page(); String section(); }
+		@Implement public String getPageTitle() { return "news"; }
+	}
+	
+	@Coalesced(cookies = { "user" })
+	private static class ReportTask extends RenderTask {
+		@Implement public String getPageTitle() { return "report"; }
+	}
+	
+	private static class OtherTask extends RenderTask {
+		@Implement public String getPageTitle() { return "other"; }
+	}
+	
+	private final Map<String, String[]> params = Empty.hashMap();
+	private final Map<String, String> cookies = Empty.hashMap();
+	private String method = "GET";
+	
+	@Override protected void tearDown() throws Exception {
+		Clock.setOffset(0);
+	}
+	
+	private HttpServletRequest request() {
+		return new HttpServletRequestWrapper(StRenderTestCase.nullProxyForInterface(HttpServletRequest.class)) {
+			@Override public String getMethod() { return method; }
+			@Override public Map<?, ?> getParameterMap() { return params; }
+			@Override public Cookie[] getCookies() {
+				Cookie[] cs = new Cookie[cookies.size()];
+				int i = 0;
+				for (Map.Entry<String, String> me : cookies.entrySet())
+					cs[i++] = new Cookie(me.getKey(), me.getValue());
+				return cs;
+			}
+		};
+	}
+	
+	/** @return the body written by the cache, or null if nothing was cached */
+	private String serve(PageCache pc, String key) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		HttpServletResponse res = new HttpServletResponseWrapper(StRenderTestCase.nullProxyForInterface(HttpServletResponse.class)) {
+			@Override public ServletOutputStream getOutputStream() {
+				return new ServletOutputStream() {
+					@Override public void write(int b) {
+						out.write(b);
+					}
+				};
+			}
+		};
+		return pc.serve(key, request(), res) ? out.toString("utf-8") : null;
+	}
+	
+	private void put(PageCache pc, String key, String content) throws IOException {
+		pc.put(key, pc.getGeneration(), NewsTask.class, "text/html", content.getBytes("utf-8"));
+	}
+	
+	/** the key includes the parameters of the Input interface and the given cookies */
+	public void testKey() {
+		PageCache pc = new PageCache(1000);
+		assertNull(pc.makeKey(OtherTask.class, request()));
+		
+		String k1 = pc.makeKey(NewsTask.class, request());
+		params.put("other", new String[] { "x" });
+		assertEquals(k1, pc.makeKey(NewsTask.class, request()));
+		params.put("page", new String[] { "2" });
+		String k2 = pc.makeKey(NewsTask.class, request());
+		assertFalse(k1.equals(k2));
+		cookies.put("lang", "en");
+		assertFalse(k2.equals(pc.makeKey(NewsTask.class, request())));
+		
+		method = "POST";
+		assertNull(pc.makeKey(NewsTask.class, request()));
+	}
+	
+	/** the responses of tasks which are only coalesced have a key, but are not cached */
+	public void testCoalesced() throws IOException {
+		PageCache pc = new PageCache(1000);
+		String k1 = pc.makeKey(ReportTask.class, request());
+		assertNotNull(k1);
+		cookies.put("user", "bob");
+		assertFalse(k1.equals(pc.makeKey(ReportTask.class, request())));
+		
+		PageCache.Page p = pc.put(k1, pc.getGeneration(), ReportTask.class, "text/html", "report".getBytes("utf-8"));
+		assertEquals(ReportTask.class, p.getTaskClass());
+		assertNull(serve(pc, k1));
+		assertEquals(0, pc.size());
+	}
+	
+	/** pages are served until they expire */
+	public void testTtl() throws IOException {
+		PageCache pc = new PageCache(1000);
+		assertNull(serve(pc, "k"));
+		put(pc, "k", "page");
+		assertEquals("page", serve(pc, "k"));
+		Clock.setOffset(61 * 1000);
+		assertNull(serve(pc, "k"));
+	}
+	
+	/** invalidated pages are removed, and pages rendered before the invalidation are not cached */
+	public void testInvalidate() throws IOException {
+		PageCache pc = new PageCache(1000);
+		put(pc, "k", "page");
+		long gen = pc.getGeneration();
+		pc.invalidate(OtherTask.class);
+		assertEquals("page", serve(pc, "k"));
+		pc.invalidate(NewsTask.class);
+		assertNull(serve(pc, "k"));
+		
+		pc.put("k", gen, NewsTask.class, "text/html", "old".getBytes("utf-8"));
+		assertNull(serve(pc, "k"));
+	}
+	
+	/** the least recently used pages are removed when the cache is full */
+	public void testEviction() throws IOException {
+		PageCache pc = new PageCache(10);
+		put(pc, "a", "aaaa");
+		put(pc, "b", "bbbb");
+		serve(pc, "a");
+		put(pc, "c", "cccc");
+		assertEquals(2, pc.size());
+		assertNull(serve(pc, "b"));
+		assertEquals("aaaa", serve(pc, "a"));
+	}
+
+}
@@ -16,7 +16,10 @@
  */
 package com.medallia.spider;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringReader;
@@ -24,9 +27,17 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 
 import javax.servlet.ServletConfig;
@@ -42,18 +53,28 @@ import org.antlr.stringtemplate.StringTemplateGroup;
 import org.antlr.stringtemplate.StringTemplateWriter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
 
+import com.medallia.spider.EmbeddedRenderTask.Cached;
+import com.medallia.spider.IRenderTask.Coalesced;
 import com.medallia.spider.MethodInvoker.LifecycleHandlerSet;
+import com.medallia.spider.StaticResources.CachingStaticResourceLookup;
 import com.medallia.spider.StaticResources.StaticResource;
-import com.medallia.spider.StaticResources.StaticResourceLookup;
 import com.medallia.spider.Task.CustomPostAction;
 import com.medallia.spider.api.StRenderable;
 import com.medallia.spider.api.StRenderer;
 import com.medallia.spider.api.StRenderable.PostAction;
+import com.medallia.spider.api.StRenderer.AsyncPostAction;
 import com.medallia.spider.api.StRenderer.InputArgParser;
 import com.medallia.spider.api.StRenderer.StRenderPostAction;
+import com.medallia.spider.api.StRenderer.StStreamPostAction;
 import com.medallia.spider.api.StRenderer.StToolProvider;
 import com.medallia.spider.api.StRenderer.StringTemplateFactory;
+import com.medallia.spider.api.TemplatePathCache;
+import com.medallia.spider.metrics.Metric;
+import com.medallia.spider.metrics.MetricsRegistry;
+import com.medallia.spider.metrics.MetricsReporter;
 import com.medallia.spider.sttools.CachedTool;
 import com.medallia.spider.sttools.StTool;
 import com.medallia.spider.test.RenderTaskTestCase;
@@ -61,9 +82,13 @@ import com.medallia.tiny.Clock;
 import com.medallia.tiny.Empty;
 import com.medallia.tiny.Implement;
 import com.medallia.tiny.ObjectProvider;
-import com.medallia.tiny.Strings;
+import com.medallia.tiny.Rethrow;
+import com.medallia.tiny.SettableFuture;
+import com.medallia.tiny.SingleFlight;
+import com.medallia.tiny.SingleFlight.Result;
 import com.medallia.tiny.string.ExplodingStringTemplateErrorListener;
 import com.medallia.tiny.string.HtmlString;
+import com.medallia.tiny.web.CompressingResponseStream;
 import com.medallia.tiny.web.HttpHeaders;
 
 /**
@@ -138,7 +163,9 @@ import com.medallia.tiny.web.HttpHeaders;
  * 
  * Spider solves this problem by dependency injecting the needed services; the dependencies are thus
  * documented simply as a list of arguments. See {@link StRenderable} for more docs. The objects available
- * for injection can be registered by overriding {@link #registerObjects(ObjectProvider)}.
+ * for injection can be registered by overriding {@link #registerApplicationObjects(ObjectProvider)} for
+ * objects shared by all requests, and {@link #registerObjects(ObjectProvider, RequestHandler)} for objects
+ * bound to a single request.
  * <p>
  *  
  * <b> M-V-C separation <br>
@@ -183,19 +210,43 @@ import com.medallia.tiny.web.HttpHeaders;
 public abstract class SpiderServlet extends HttpServlet {
 	private static Log log;
 	
-	private final StaticResourceLookup staticResourceLookup;
+	/** Maximum total size in bytes of the static resources kept in memory */
+	private static final int STATIC_RESOURCE_CACHE_BYTES = 32 * 1024 * 1024;
+	/** Maximum total length of the content of the embedded tasks kept in memory */
+	private static final int FRAGMENT_CACHE_CHARS = 8 * 1024 * 1024;
+	/** Maximum total size in bytes of the responses of the tasks kept in memory */
+	private static final int PAGE_CACHE_BYTES = 32 * 1024 * 1024;
+	
+	private final CachingStaticResourceLookup staticResourceLookup;
+	/** content of the embedded tasks annotated with {@link EmbeddedRenderTask.Cached} */
+	private final FragmentCache fragmentCache = new FragmentCache(FRAGMENT_CACHE_CHARS);
+	/** responses of the tasks annotated with {@link IRenderTask.CachedPage} */
+	private final PageCache pageCache = new PageCache(PAGE_CACHE_BYTES);
+	/** renders of the tasks annotated with {@link Coalesced} in progress, by the key in {@link #pageCache} */
+	private final SingleFlight<PageCache.Page> pageFlights = new SingleFlight<PageCache.Page>();
 	
 	/** Used to render page.st */
 	private final StringTemplateGroup pageStGroup;
+	/** Paths to the templates used by {@link #pageStGroup} */
+	private final TemplatePathCache pageTemplatePathCache = new TemplatePathCache(SpiderServlet.class);
 	/** Used to render the .st files for {@link RenderTask} and {@link EmbeddedRenderTask} */
 	private final StringTemplateFactory stringTemplateFactory;
 	
+	/** creates links to static resources; memoizes them unless in debug mode */
+	private final CachedTool cachedTool;
+	
 	/** map from name of a StTool to an instance of it */
 	private final Map<String, StTool> stTools;
 	
+	/** histograms of the metrics recorded for each request; see {@link #getMetricsUri()} */
+	private final MetricsRegistry metrics = new MetricsRegistry();
+	/** receives the metrics in addition to {@link #metrics}; see {@link #getMetricsReporter()} */
+	private volatile MetricsReporter metricsReporter;
+	
 	/** constructor that creates the initial state */
 	public SpiderServlet() {
-		staticResourceLookup = StaticResources.makeStaticResourceLookup(getServletClass());
+		staticResourceLookup = new CachingStaticResourceLookup(StaticResources.makeStaticResourceLookup(getServletClass()), STATIC_RESOURCE_CACHE_BYTES);
+		cachedTool = new CachedTool(staticResourceLookup);
 		stTools = buildStToolsMap();
 		pageStGroup = new StringTemplateGroup("PageStGroup") {
 			@Override public String getFileNameFromTemplateName(String name) {
@@ -264,9 +315,23 @@ public abstract class SpiderServlet extends HttpServlet {
 
 	/** Register the objects that should be available for dependency injection. The
 	 * {@link ObjectProvider#register(Object)} method is typically used.
+	 * <p>
+	 * 
+	 * This method is called once for each request; objects that do not depend on the
+	 * request should be registered in {@link #registerApplicationObjects(ObjectProvider)}
+	 * instead.
 	 */
 	protected void registerObjects(ObjectProvider injector, RequestHandler request) { }
 	
+	/** Register the objects that should be available for dependency injection in all requests.
+	 * This method is called once from {@link #init(ServletConfig)}; the given ObjectProvider is
+	 * frozen afterwards and shared by all requests.
+	 */
+	protected void registerApplicationObjects(ObjectProvider injector) { }
+	
+	/** objects registered by {@link #registerApplicationObjects(ObjectProvider)}; frozen */
+	private volatile ObjectProvider applicationObjects = new ObjectProvider().freeze();
+	
 	protected <X> void registerLifecycleHandlers(LifecycleHandlerSet hs, RequestHandler request) { }
 
 	/** Register any custom request parameter parsers. The method
@@ -291,6 +356,13 @@ public abstract class SpiderServlet extends HttpServlet {
 		int refreshInterval = debugMode ? 0 : Integer.MAX_VALUE / 1000;
 		pageStGroup.setRefreshInterval(refreshInterval);
 		stringTemplateFactory.setRefreshInterval(refreshInterval);
+		// in debug mode templates and static resources may be changed while running
+		staticResourceLookup.setEnabled(!debugMode);
+		fragmentCache.setEnabled(!debugMode);
+		pageCache.setEnabled(!debugMode);
+		cachedTool.setMemoize(!debugMode);
+		pageTemplatePathCache.setValidating(debugMode);
+		stringTemplateFactory.getTemplatePathCache().setValidating(debugMode);
 	}
 	
 	/** sets up the logging; this is done here instead of in the constructor to give subclasses
@@ -300,6 +372,47 @@ public abstract class SpiderServlet extends HttpServlet {
 	public void init(ServletConfig cfg) throws ServletException {
 		log = LogFactory.getLog(getServletClass());
 		super.init(cfg);
+		ObjectProvider injector = new ObjectProvider();
+		injector.register(pageCache);
+		registerApplicationObjects(injector);
+		applicationObjects = injector.freeze();
+		metricsReporter = getMetricsReporter();
+		try {
+			int n = taskRoutes.scan();
+			log.info("Found " + n + " tasks in " + taskPackage);
+		} catch (IOException e) {
+			throw new ServletException("Failed to scan " + taskPackage + " for tasks", e);
+		}
+		if (!debugMode)
+			loadTemplates();
+	}
+	
+	/** names of the templates used to render the frame of each page; see {@link #renderFinal} */
+	private static final String[] PAGE_TEMPLATES = { "page", "head", "nav", "body", "content", "footer" };
+	
+	/**
+	 * Load the page templates and the templates of all tasks found in the task package,
+	 * so this does not have to be done while handling the first requests. This is only
+	 * done when debug mode is off, since the templates are otherwise re-read on each request.
+	 * 
+	 * @throws ServletException if any of the templates cannot be parsed
+	 */
+	private void loadTemplates() throws ServletException {
+		long nt = System.nanoTime();
+		try {
+			for (String name : PAGE_TEMPLATES)
+				pageStGroup.getInstanceOf(name);
+			
+			int n = 0;
+			for (Class<?> c : taskRoutes.getTaskClasses()) {
+				String relativeTemplatePath = EmbeddedRenderTask.class.isAssignableFrom(c) ? "embedded/" : "pages/";
+				if (makeRenderer(null, null, relativeTemplatePath).loadTemplate(c))
+					n++;
+			}
+			log.info("Loaded " + n + " task templates in " + TimeUnit.MILLISECONDS.convert(System.nanoTime() - nt, TimeUnit.NANOSECONDS) + " ms");
+		} catch (RuntimeException e) {
+			throw new ServletException("Failed to load templates", e);
+		}
 	}
 
 	/** Forwards to {@link #handleRequest(HttpServletRequest, HttpServletResponse)} */
@@ -316,6 +429,10 @@ public abstract class SpiderServlet extends HttpServlet {
 		try {
 			handleInternal(req, res);
 		} catch (Throwable t) {
+			// the container dispatches a suspended request again once it is resumed; see awaitAsync
+			PendingRender pr = (PendingRender) req.getAttribute(PENDING_RENDER_ATTRIBUTE);
+			if (pr != null && pr.suspended && t instanceof RuntimeException)
+				throw (RuntimeException) t;
 			handleException(req, res, t);
 		}
 	}
@@ -324,12 +441,15 @@ public abstract class SpiderServlet extends HttpServlet {
 	 * cases the result of a programming error.
 	 * 
 	 * In debug mode the error is printed directly to the response, otherwise a generic error messages is displayed.
+	 * The status is set to 500 unless the response has already been committed.
 	 */
 	protected void handleException(HttpServletRequest req, HttpServletResponse res, Throwable t) throws IOException {
 		log.error("For URI: " + req.getRequestURI(), t);
 		if (debugMode) {
+			if (!res.isCommitted())
+				res.setStatus(500);
 			printError(res, t);
-		} else {
+		} else if (!res.isCommitted()) {
 			res.setStatus(500);
 			printError(res, "An error occurred in the application.");
 		}
@@ -346,7 +466,7 @@ public abstract class SpiderServlet extends HttpServlet {
 
 	/** print the error */
 	protected void printError(HttpServletResponse res, String s) throws IOException {
-		PrintWriter w = new PrintWriter(getUtf8Writer(res));
+		PrintWriter w = new PrintWriter(getUtf8Writer(res, res.getOutputStream()));
 		w.println("<pre>");
 		w.println(s);
 		w.println("</pre>");
@@ -365,30 +485,288 @@ public abstract class SpiderServlet extends HttpServlet {
 
 	/** Parse the URI and forward the request to the appropriate task */
 	protected void handleInternal(HttpServletRequest req, HttpServletResponse res) throws IOException {
+		PendingRender pr = (PendingRender) req.getAttribute(PENDING_RENDER_ATTRIBUTE);
+		if (pr != null) {
+			// the request was suspended by awaitAsync and has now been dispatched again
+			req.removeAttribute(PENDING_RENDER_ATTRIBUTE);
+			PageCache.Page page = finishRender(pr, getAsyncResult(pr.asyncPostAction, 0), req, res);
+			if (page != null)
+				writePage(page, pr.start, req, res);
+			return;
+		}
+		
+		long start = System.nanoTime();
 		String uri = getUriForRequest(req);
 		if (uri.length() == 0) {
 			res.sendRedirect("/" + getDefaultURI());
 			return;
 		}
-		if (serveStatic(uri, res)) return;
-		log.info("Serving URI: " + uri + (debugMode ? " [debug mode]" : ""));
+		if (uri.equals(getMetricsUri())) {
+			if (isMetricsAccessAllowed(req))
+				writeMetrics(res);
+			else
+				res.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		if (serveStatic(uri, req, res)) {
+			record(MetricsRegistry.STATIC_RESOURCES, Metric.STATIC, System.nanoTime() - start);
+			return;
+		}
+		Class<? extends ITask> pageClass = findSharedPageClass(uri);
+		String pageKey = pageClass != null ? pageCache.makeKey(pageClass, req) : null;
+		if (pageKey != null && pageCache.serve(pageKey, req, res)) {
+			record(metricsName(pageClass), Metric.CACHED_PAGE, System.nanoTime() - start);
+			return;
+		}
+		
+		if (log.isInfoEnabled())
+			log.info("Serving URI: " + uri + (debugMode ? " [debug mode]" : ""));
 		
-		RequestHandler request = makeRequest(req, res);
-		ITask t = findTask(uri, request);
+		Coalesced co = pageKey != null ? pageClass.getAnnotation(Coalesced.class) : null;
+		PageCache.Page page;
+		if (co != null) {
+			Result<PageCache.Page> r = pageFlights.run(pageKey, pageClass.getName(), co.timeoutMillis(), renderTaskCallable(uri, req, res, pageKey, start));
+			page = r.getValue();
+			if (!r.isComputed()) {
+				if (page == null) {
+					// the response could not be shared
+					renderTask(uri, req, res, null, start, true);
+				} else {
+					pageCache.write(page, req, res);
+					record(metricsName(pageClass), Metric.COALESCED_PAGE, System.nanoTime() - start);
+				}
+				return;
+			}
+		} else {
+			page = renderTask(uri, req, res, pageKey, start, true);
+		}
+		if (page != null)
+			writePage(page, start, req, res);
+	}
+	
+	/** write the given page, which was rendered for this request */
+	private void writePage(PageCache.Page page, long start, HttpServletRequest req, HttpServletResponse res) throws IOException {
+		pageCache.write(page, req, res);
+		record(metricsName(page.getTaskClass()), Metric.TOTAL, System.nanoTime() - start);
+	}
+	
+	/** @return a Callable that calls {@link #renderTask} with the given arguments; the request is not suspended */
+	private Callable<PageCache.Page> renderTaskCallable(final String uri, final HttpServletRequest req, final HttpServletResponse res, final String pageKey, final long start) {
+		return new Callable<PageCache.Page>() {
+			@Implement public PageCache.Page call() throws IOException {
+				// the other requests waiting for the response would see the suspension as a failure
+				return renderTask(uri, req, res, pageKey, start, false);
+			}
+		};
+	}
+	
+	/**
+	 * Create and render the task the given URI maps to
+	 * @param pageKey the key of the response in the {@link #pageCache}, or null if it should not be cached or shared
+	 * @param start the value of System.nanoTime() when the request was received
+	 * @param suspendable true if the request may be suspended while waiting for the result of an asynchronous action
+	 * @return the response if the given key is not null and the response can be cached or shared,
+	 * in which case it has not been written; otherwise null
+	 */
+	private PageCache.Page renderTask(String uri, HttpServletRequest req, HttpServletResponse res, String pageKey, long start, boolean suspendable) throws IOException {
+		long pageGeneration = pageCache.getGeneration();
+		ServletRequestHandler request = makeRequest(req, res);
+		long nt = System.nanoTime();
+		ObjectProvider injector = makeObjectProvider(request);
+		long injectorNanos = System.nanoTime() - nt;
+		ITask t = findTask(uri, injector, request);
 		if (t == null) {
 			log.info("No task found, sending to default URI");
 			res.sendRedirect(getDefaultURI());
-			return;
+			return null;
 		}
+		String name = metricsName(t);
+		record(name, Metric.INJECTOR, injectorNanos);
 		
 		@SuppressWarnings("unchecked")
 		Map<String, String[]> reqParams = req.getParameterMap();
 		
-		List<EmbeddedContent> embeddedContent = Empty.list();
-		for (EmbeddedRenderTask ert : t.dependsOn())
-			renderEmbedded(ert, reqParams, request, embeddedContent);
+		List<EmbeddedContent> embeddedContent;
+		nt = System.nanoTime();
+		ExecutorService executor = getEmbeddedRenderExecutor();
+		if (executor != null) {
+			embeddedContent = renderEmbeddedConcurrently(t, reqParams, injector, request, executor);
+		} else {
+			embeddedContent = Empty.list();
+			for (EmbeddedRenderTask ert : t.dependsOn())
+				renderEmbedded(ert, reqParams, injector, request, embeddedContent);
+		}
+		if (!embeddedContent.isEmpty())
+			record(name, Metric.EMBEDDED, System.nanoTime() - nt);
 
-		renderFinal(t, req, reqParams, request, embeddedContent, res);
+		PendingRender pr = new PendingRender(t, reqParams, injector, request, embeddedContent, pageKey, pageGeneration, start);
+		PostAction po = render(t, reqParams, injector, request, embeddedContent, "pages/", true);
+		if (po instanceof AsyncPostAction)
+			po = awaitAsync(pr, (AsyncPostAction) po, suspendable, req);
+		return finishRender(pr, po, req, res);
+	}
+	
+	/** The state needed to write the response for a task once its action method has returned */
+	private static class PendingRender {
+		private final ITask task;
+		private final Map<String, String[]> reqParams;
+		private final ObjectProvider injector;
+		private final ServletRequestHandler request;
+		private final List<EmbeddedContent> embeddedContent;
+		private final String pageKey;
+		private final long pageGeneration;
+		private final long start;
+		/** the result of the action method the request is waiting for */
+		private AsyncPostAction asyncPostAction;
+		/** true if the request has been suspended and will be dispatched again */
+		private volatile boolean suspended;
+		PendingRender(ITask task, Map<String, String[]> reqParams, ObjectProvider injector, ServletRequestHandler request, List<EmbeddedContent> embeddedContent, String pageKey, long pageGeneration, long start) {
+			this.task = task;
+			this.reqParams = reqParams;
+			this.injector = injector;
+			this.request = request;
+			this.embeddedContent = embeddedContent;
+			this.pageKey = pageKey;
+			this.pageGeneration = pageGeneration;
+			this.start = start;
+		}
+	}
+	
+	/** name of the request attribute that holds the {@link PendingRender} of a suspended request */
+	private static final String PENDING_RENDER_ATTRIBUTE = PendingRender.class.getName();
+	
+	/**
+	 * Wait for the result of an asynchronous action method.
+	 * <p>
+	 * 
+	 * If allowed, and the Future is a {@link SettableFuture}, the request is suspended with a
+	 * Jetty continuation which is resumed when the Future is done. On Jetty's NIO connector this
+	 * releases the thread: suspending the request throws a RetryRequest and the request is
+	 * dispatched again once it is resumed, at which point {@link #handleInternal} finishes it
+	 * from the {@link PendingRender} stored in the request. In other containers the continuation
+	 * blocks the thread, as does waiting for any other Future.
+	 * 
+	 * @return the result of the action method
+	 */
+	private PostAction awaitAsync(PendingRender pr, AsyncPostAction apo, boolean suspendable, HttpServletRequest req) {
+		Future<?> f = apo.getFuture();
+		long timeout = getAsyncActionTimeout();
+		if (suspendable && !f.isDone() && f instanceof SettableFuture) {
+			pr.asyncPostAction = apo;
+			req.setAttribute(PENDING_RENDER_ATTRIBUTE, pr);
+			final Continuation c = ContinuationSupport.getContinuation(req, null);
+			((SettableFuture<?>) f).addListener(new Runnable() {
+				@Implement public void run() {
+					c.resume();
+				}
+			});
+			try {
+				c.suspend(timeout);
+			} catch (RuntimeException e) {
+				pr.suspended = true;
+				// a resume before the request was suspended has no effect, so it must be repeated
+				if (f.isDone())
+					c.resume();
+				throw e;
+			}
+			// the continuation has blocked until resumed or timed out
+			req.removeAttribute(PENDING_RENDER_ATTRIBUTE);
+			timeout = 0;
+		}
+		return getAsyncResult(apo, timeout);
+	}
+	
+	/**
+	 * @param timeoutMillis maximum number of milliseconds to wait for the Future to be done
+	 * @return the result of the given asynchronous action
+	 */
+	private PostAction getAsyncResult(AsyncPostAction apo, long timeoutMillis) {
+		try {
+			apo.getFuture().get(timeoutMillis, TimeUnit.MILLISECONDS);
+			return apo.getResult();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("The asynchronous action failed", e.getCause());
+		} catch (TimeoutException e) {
+			throw new RuntimeException("Timed out waiting for the result of the asynchronous action");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for the result of the asynchronous action", e);
+		}
+	}
+	
+	/**
+	 * @return the maximum number of milliseconds a request waits for the Future returned from an
+	 * action method; see {@link AsyncPostAction}
+	 */
+	protected long getAsyncActionTimeout() {
+		return 30000;
+	}
+	
+	/** write the response for the given result of the action method; see {@link #renderFinal} */
+	private PageCache.Page finishRender(PendingRender pr, PostAction po, HttpServletRequest req, HttpServletResponse res) throws IOException {
+		PageCache.Page page = renderFinal(pr.task, po, req, pr.reqParams, pr.injector, pr.request, pr.embeddedContent, pr.pageKey, pr.pageGeneration, res);
+		if (page == null)
+			record(metricsName(pr.task), Metric.TOTAL, System.nanoTime() - pr.start);
+		return page;
+	}
+	
+	/**
+	 * @return the URI (relative to the context path) of the page that shows the metrics recorded
+	 * for each task, see {@link Metric}, or null (the default) to disable the page. The page lists
+	 * the name of every task class along with its latency and response sizes, so an application
+	 * that enables it should also override {@link #isMetricsAccessAllowed(HttpServletRequest)}
+	 * unless the URI is protected in some other way.
+	 */
+	protected String getMetricsUri() {
+		return null;
+	}
+	
+	/**
+	 * @return true if the given request for the page at {@link #getMetricsUri()} may see it; if not
+	 * the page is reported as not found. The default allows all requests.
+	 */
+	protected boolean isMetricsAccessAllowed(HttpServletRequest req) {
+		return true;
+	}
+	
+	/**
+	 * @return an object that receives the metrics recorded for each request in addition to the
+	 * page at {@link #getMetricsUri()}, or null (the default) if there is none. This is called once
+	 * from {@link #init(ServletConfig)}.
+	 */
+	protected MetricsReporter getMetricsReporter() {
+		return null;
+	}
+	
+	/** @return the cache of the responses of the tasks annotated with {@link IRenderTask.CachedPage} */
+	protected PageCache getPageCache() {
+		return pageCache;
+	}
+	
+	/** @return the histograms of the metrics recorded for each task */
+	protected MetricsRegistry getMetrics() {
+		return metrics;
+	}
+	
+	private void record(String name, Metric metric, long value) {
+		metrics.report(name, metric, value);
+		MetricsReporter r = metricsReporter;
+		if (r != null)
+			r.report(name, metric, value);
+	}
+	
+	/** @return the name the metrics for the given task are recorded under */
+	private static String metricsName(ITask t) {
+		return metricsName(t.getClass());
+	}
+	private static String metricsName(Class<?> c) {
+		return c.getName();
+	}
+	
+	private void writeMetrics(HttpServletResponse res) throws IOException {
+		HttpHeaders.addNoCacheHeaders(res);
+		res.setContentType("text/plain; charset=utf-8");
+		metrics.writeReport(new PrintWriter(new OutputStreamWriter(res.getOutputStream(), "utf-8")));
 	}
 
 	/** @return the URI requested by the given HttpServletRequest */
@@ -396,42 +774,58 @@ public abstract class SpiderServlet extends HttpServlet {
 		return req.getRequestURI().substring(req.getContextPath().length());
 	}
 
-	private RequestHandler makeRequest(HttpServletRequest req, final HttpServletResponse response) {
-		final Map<String, String> m = Empty.hashMap();
+	private ServletRequestHandler makeRequest(HttpServletRequest req, HttpServletResponse response) {
+		Map<String, String> m = Empty.hashMap();
 		Cookie[] cookies = req.getCookies();
 		if (cookies != null) {
 			for (Cookie c : cookies) {
 				addCookie(m, c);
 			}
 		}
-		return new RequestHandler() {
-			@Implement public String getCookieValue(String name) {
-				return m.get(name);
-			}
-			@Implement public void setCookieValue(String name, String value) {
-				storeCookie(makeCookie(name, value));
-			}
-			@Implement public void setPersistentCookieValue(String name, String value, int expiry) {
-				if (expiry <= 0)
-					throw new IllegalArgumentException("expiry must be a positive number: " + expiry);
-				
-				Cookie c = makeCookie(name, value);
-				c.setMaxAge(expiry);
-				storeCookie(c);
-			}
-			@Implement public void removeCookieValue(String name) {
-				Cookie c = makeCookie(name, null);
-				c.setMaxAge(0);
-				storeCookie(c);
-			}
-			private void storeCookie(Cookie c) {
-				response.addCookie(c);
-				addCookie(m, c);
-			}
-			private Cookie makeCookie(String name, String value) {
-				return new Cookie(name, value);
-			}
-		};
+		return new ServletRequestHandler(m, response);
+	}
+	
+	/** {@link RequestHandler} which stores cookies in the response */
+	/**
+	 * Embedded tasks rendered in parallel share the handler of the request, thus access to
+	 * the cookies (and to the response when setting them) is synchronized on the handler.
+	 */
+	private class ServletRequestHandler implements RequestHandler {
+		private final Map<String, String> m;
+		private final HttpServletResponse response;
+		/** true if a cookie has been set or removed */
+		private volatile boolean cookiesChanged;
+		ServletRequestHandler(Map<String, String> m, HttpServletResponse response) {
+			this.m = m;
+			this.response = response;
+		}
+		@Implement public synchronized String getCookieValue(String name) {
+			return m.get(name);
+		}
+		@Implement public void setCookieValue(String name, String value) {
+			storeCookie(makeCookie(name, value));
+		}
+		@Implement public void setPersistentCookieValue(String name, String value, int expiry) {
+			if (expiry <= 0)
+				throw new IllegalArgumentException("expiry must be a positive number: " + expiry);
+			
+			Cookie c = makeCookie(name, value);
+			c.setMaxAge(expiry);
+			storeCookie(c);
+		}
+		@Implement public void removeCookieValue(String name) {
+			Cookie c = makeCookie(name, null);
+			c.setMaxAge(0);
+			storeCookie(c);
+		}
+		private synchronized void storeCookie(Cookie c) {
+			cookiesChanged = true;
+			response.addCookie(c);
+			addCookie(m, c);
+		}
+		private Cookie makeCookie(String name, String value) {
+			return new Cookie(name, value);
+		}
 	}
 
 	private void addCookie(final Map<String, String> m, Cookie c) {
@@ -439,29 +833,200 @@ public abstract class SpiderServlet extends HttpServlet {
 	}
 
 	/** render the given embedded task (recursively) */
-	private void renderEmbedded(EmbeddedRenderTask t, Map<String, String[]> reqParams, RequestHandler request, List<EmbeddedContent> embeddedContent) {
+	private void renderEmbedded(EmbeddedRenderTask t, Map<String, String[]> reqParams, ObjectProvider injector, RequestHandler request, List<EmbeddedContent> embeddedContent) {
 		for (EmbeddedRenderTask ert : t.dependsOn())
-			renderEmbedded(ert, reqParams, request, embeddedContent);
+			renderEmbedded(ert, reqParams, injector, request, embeddedContent);
 
-		PostAction po = render(t, reqParams, request, null, "embedded/");
+		embeddedContent.add(new EmbeddedContent(t, renderEmbedded(t, reqParams, injector, request)));
+	}
+	
+	/**
+	 * @return the result of rendering the given embedded task (but not the tasks it depends on),
+	 * which is taken from the {@link #fragmentCache} if the task allows it
+	 */
+	private StRenderPostAction renderEmbedded(final EmbeddedRenderTask t, final Map<String, String[]> reqParams, final ObjectProvider injector, final RequestHandler request) {
+		Cached c = fragmentCache.getCached(t);
+		if (c == null)
+			return renderEmbeddedUncached(t, reqParams, injector, request);
+		
+		final String content = fragmentCache.get(FragmentCache.makeKey(t, c, reqParams, request), c, new FragmentCache.Renderer() {
+			@Implement public String render() {
+				return renderEmbeddedUncached(t, reqParams, injector, request).getStContent();
+			}
+		});
+		return new StRenderPostAction() {
+			@Implement public String getStContent() {
+				return content;
+			}
+		};
+	}
+	
+	private StRenderPostAction renderEmbeddedUncached(EmbeddedRenderTask t, Map<String, String[]> reqParams, ObjectProvider injector, RequestHandler request) {
+		PostAction po = render(t, reqParams, injector, request, null, "embedded/", false);
 		if (po instanceof StRenderPostAction)
-			embeddedContent.add(new EmbeddedContent(t, (StRenderPostAction) po));
+			return (StRenderPostAction) po;
 		else
 			throw new RuntimeException("EmbeddedRenderTask returned unsupported PostAction " + po);
 	}
+	
+	/**
+	 * @return the ExecutorService used to render the embedded tasks of a request concurrently, or null
+	 * (the default) to render them one after the other on the request thread.
+	 * <p>
+	 * 
+	 * If an executor is returned an embedded task is rendered as soon as the tasks it depends on
+	 * are rendered, thus independent tasks are rendered concurrently. These tasks, and the objects
+	 * injected into them, must then be thread safe. The content is added to the template in the
+	 * same order as when rendered sequentially.
+	 */
+	protected ExecutorService getEmbeddedRenderExecutor() {
+		return null;
+	}
+	
+	/**
+	 * @return the maximum number of milliseconds a request waits for its embedded tasks when they
+	 * are rendered by the executor returned from {@link #getEmbeddedRenderExecutor()}
+	 */
+	protected long getEmbeddedRenderTimeout() {
+		return 30000;
+	}
+	
+	/** an {@link EmbeddedRenderTask} in the dependency graph used by {@link SpiderServlet#renderEmbeddedConcurrently} */
+	private static class EmbeddedNode {
+		private final EmbeddedRenderTask task;
+		/** the tasks which depend on this task */
+		private final List<EmbeddedNode> dependents = Empty.list();
+		/** the number of tasks this task depends on which have not been rendered yet */
+		private int pending;
+		private StRenderPostAction result;
+		EmbeddedNode(EmbeddedRenderTask task) {
+			this.task = task;
+		}
+	}
+	
+	/** @return the rendered embedded tasks (recursively) of the given task, using the given executor */
+	private List<EmbeddedContent> renderEmbeddedConcurrently(ITask t, final Map<String, String[]> reqParams, final ObjectProvider injector, final RequestHandler request, ExecutorService executor) {
+		// the order the tasks are rendered in sequentially, which is also the order the content is added in
+		List<EmbeddedRenderTask> order = Empty.list();
+		Map<EmbeddedRenderTask, EmbeddedNode> nodes = new IdentityHashMap<EmbeddedRenderTask, EmbeddedNode>();
+		for (EmbeddedRenderTask ert : t.dependsOn())
+			addEmbeddedNode(ert, order, nodes, new IdentityHashMap<EmbeddedRenderTask, Boolean>());
+		
+		CompletionService<EmbeddedNode> cs = new ExecutorCompletionService<EmbeddedNode>(executor);
+		List<Future<EmbeddedNode>> futures = Empty.list();
+		int outstanding = 0;
+		for (EmbeddedNode n : nodes.values()) {
+			if (n.pending == 0) {
+				futures.add(cs.submit(embeddedRenderCallable(n, reqParams, injector, request)));
+				outstanding++;
+			}
+		}
+		
+		long timeout = getEmbeddedRenderTimeout();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		try {
+			while (outstanding > 0) {
+				Future<EmbeddedNode> f = cs.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (f == null)
+					throw new RuntimeException("Timed out after " + timeout + " ms waiting for the embedded tasks of " + t);
+				outstanding--;
+				for (EmbeddedNode dependent : f.get().dependents) {
+					if (--dependent.pending == 0) {
+						futures.add(cs.submit(embeddedRenderCallable(dependent, reqParams, injector, request)));
+						outstanding++;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for the embedded tasks of " + t, e);
+		} catch (ExecutionException e) {
+			throw Rethrow.withComment(e.getCause(), "While rendering the embedded tasks of " + t);
+		} finally {
+			// stop any tasks still running if we failed; this is a no-op for the completed ones
+			for (Future<EmbeddedNode> f : futures)
+				f.cancel(true);
+		}
+		
+		List<EmbeddedContent> embeddedContent = Empty.list();
+		for (EmbeddedRenderTask ert : order)
+			embeddedContent.add(new EmbeddedContent(ert, nodes.get(ert).result));
+		return embeddedContent;
+	}
+	
+	/**
+	 * Add the given task and the tasks it depends on (recursively) to the dependency graph.
+	 * The tasks are added to the order list in the same order as {@link #renderEmbedded} renders them.
+	 * 
+	 * @param path the tasks currently being visited; used to detect cycles
+	 * @return the node for the given task
+	 */
+	private EmbeddedNode addEmbeddedNode(EmbeddedRenderTask t, List<EmbeddedRenderTask> order, Map<EmbeddedRenderTask, EmbeddedNode> nodes, Map<EmbeddedRenderTask, Boolean> path) {
+		if (path.put(t, Boolean.TRUE) != null)
+			throw new RuntimeException("Cyclic dependency on embedded task " + t);
+		
+		EmbeddedNode n = nodes.get(t);
+		boolean isNew = n == null;
+		if (isNew) {
+			n = new EmbeddedNode(t);
+			nodes.put(t, n);
+		}
+		for (EmbeddedRenderTask ert : t.dependsOn()) {
+			EmbeddedNode dependency = addEmbeddedNode(ert, order, nodes, path);
+			// a task that occurs more than once is rendered once, thus only count its dependencies once
+			if (isNew) {
+				dependency.dependents.add(n);
+				n.pending++;
+			}
+		}
+		
+		path.remove(t);
+		order.add(t);
+		return n;
+	}
+	
+	private Callable<EmbeddedNode> embeddedRenderCallable(final EmbeddedNode n, final Map<String, String[]> reqParams, final ObjectProvider injector, final RequestHandler request) {
+		return new Callable<EmbeddedNode>() {
+			@Implement public EmbeddedNode call() {
+				n.result = renderEmbedded(n.task, reqParams, injector, request);
+				return n;
+			}
+		};
+	}
 
 	
 	private final Date boot = Clock.now();
 	
 	/** serve static resources, e.g. images and css that do not have any dynamic component */
-	private boolean serveStatic(String uri, HttpServletResponse res) throws IOException {
+	private boolean serveStatic(String uri, HttpServletRequest req, HttpServletResponse res) throws IOException {
 		StaticResource staticResource = staticResourceLookup.findStaticResource(uri);
 		if (staticResource != null) {
 			if (staticResource.exists()) {
+				byte[] gzipped = staticResource.getGzippedContent();
+				boolean useGzip = gzipped != null && HttpHeaders.acceptsEncoding(req, "gzip");
+				// each encoding of the resource needs its own entity tag
+				String etag = "\"" + staticResource.getContentHash() + (useGzip ? "-gzip" : "") + "\"";
+				long lastModified = staticResource.getLastModified();
+				if (lastModified <= 0) lastModified = boot.getTime();
+				
 				res.setHeader("Content-Type", staticResource.getMimeType());
-				res.setDateHeader("Date", boot.getTime());				
+				res.setHeader("ETag", etag);
+				res.setDateHeader("Last-Modified", lastModified);
+				if (gzipped != null)
+					res.setHeader("Vary", "Accept-Encoding");
 				HttpHeaders.addCacheForeverHeaders(res);
-				staticResource.copyTo(res.getOutputStream());
+				if (HttpHeaders.isNotModified(req, etag, lastModified)) {
+					res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				} else if (useGzip) {
+					res.setHeader("Content-Encoding", "gzip");
+					res.setContentLength(gzipped.length);
+					res.getOutputStream().write(gzipped);
+				} else {
+					int length = staticResource.getLength();
+					if (length >= 0)
+						res.setContentLength(length);
+					staticResource.copyTo(res.getOutputStream());
+				}
 			} else {
 				res.sendError(404);
 				log.warn("Requested resource not found: " + uri);
@@ -486,34 +1051,55 @@ public abstract class SpiderServlet extends HttpServlet {
 	protected Class<? extends SpiderServlet> getServletParent() {
 		return SpiderServlet.class;
 	}
+	
+	/** maps the last part of the URI to the task class; see {@link TaskRoutes} */
+	private final TaskRoutes taskRoutes = new TaskRoutes(getServletClass().getClassLoader(), taskPackage);
 
-	/** @return an instance of the task the given URI maps to, or null if no such class exists */
-	private ITask findTask(String uri, RequestHandler request) {
+	/**
+	 * @return the task class the given URI maps to if it is annotated with {@link IRenderTask.CachedPage}
+	 * or {@link Coalesced}, otherwise null
+	 */
+	private Class<? extends ITask> findSharedPageClass(String uri) {
+		if (debugMode)
+			return null;
 		String tn = extractTaskName(uri);
 		if (tn != null) {
-			String cn = taskPackage + tn;
-			Class<?> c;
-			try {
-				c = Class.forName(cn);
-			} catch (ClassNotFoundException e) {
-				throw new RuntimeException("No class " + cn);
+			Constructor<ITask> cons = taskRoutes.findConstructor(tn);
+			if (cons != null) {
+				Class<ITask> c = cons.getDeclaringClass();
+				if (c.isAnnotationPresent(IRenderTask.CachedPage.class) || c.isAnnotationPresent(Coalesced.class))
+					return c;
 			}
-			if (c != null && ITask.class.isAssignableFrom(c)) {
-				@SuppressWarnings({"unchecked"})
-				Constructor<ITask>[] consArr = (Constructor<ITask>[]) c.getConstructors();
-				if (consArr.length != 1)
-					throw new RuntimeException("Class " + c + " must have exactly one constructor");
-				return new MethodInvoker(makeObjectProvider(request), makeLifecycleHandlerSet(request)).invoke(consArr[0]);
+		}
+		return null;
+	}
+	
+	/** @return an instance of the task the given URI maps to, or null if no such class exists */
+	private ITask findTask(String uri, ObjectProvider injector, RequestHandler request) {
+		String tn = extractTaskName(uri);
+		if (tn != null) {
+			long nt = System.nanoTime();
+			TaskRoutes.Route route = taskRoutes.findRoute(tn);
+			if (route != null) {
+				String name = metricsName(route.getConstructor().getDeclaringClass());
+				long ct = System.nanoTime();
+				record(name, Metric.ROUTE_LOOKUP, ct - nt);
+				ITask t = new MethodInvoker(injector, makeLifecycleHandlerSet(request)).invoke(route.getConstructor(), route.getArgsPlan());
+				record(name, Metric.CONSTRUCTOR, System.nanoTime() - ct);
+				return t;
 			}
 		}
 		return null;
 	}
 	
-	/** @return an instance of ObjectProvider with all the objects that are available for dependency injection */
+	/**
+	 * @return an instance of ObjectProvider with all the objects that are available for dependency injection;
+	 * this is an overlay of the application objects with the objects registered for the request added
+	 */
 	private ObjectProvider makeObjectProvider(RequestHandler request) {
-		ObjectProvider injector = new ObjectProvider();
+		ObjectProvider injector = applicationObjects.overlay();
 		registerObjects(injector, request);
-		return injector;
+		return injector.freeze();
 	}
 	
 	private LifecycleHandlerSet makeLifecycleHandlerSet(RequestHandler request) {
@@ -522,19 +1108,17 @@ public abstract class SpiderServlet extends HttpServlet {
 		return hs;
 	}
 
-	/** @return the task name the given URI maps to */
+	/** @return the task name the given URI maps to, e.g. 'foo' for FooTask */
 	private String extractTaskName(String uri) {
 		int k = uri.lastIndexOf('/');
-		if (k >= 0) {
-			String s = Strings.capitalizeFirstCharacter(uri.substring(k+1));
-			return s.length() == 0 ? null : s + "Task";
-		}
+		if (k >= 0 && k < uri.length() - 1)
+			return uri.substring(k+1);
 		return null;
 	}
 	
 	private Map<String, StTool> buildStToolsMap() {
 		Map<String, StTool> m = Empty.hashMap();
-		m.put("cached", new CachedTool(staticResourceLookup));
+		m.put("cached", cachedTool);
 		return m;
 	}
 
@@ -546,41 +1130,54 @@ public abstract class SpiderServlet extends HttpServlet {
 	/** @return the path to the StringTemplate with the given name */
 	protected String findPathForTemplate(String name) {
 		name = "st/" + name;
-		String path = name + ".st";
-		Class<?> c = getServletClass();
-		while (c != null) {
-			if (c.getResource(path) != null)
-				return c.getPackage().getName().replace('.', '/') + "/" + name;
-			
-			if (c == SpiderServlet.class)
-				break;
-			
-			c = c.getSuperclass();
-		}
-		throw new RuntimeException("Cannot find template " + name);
+		String path = pageTemplatePathCache.findPath(getServletClass(), name);
+		if (path == null) throw new RuntimeException("Cannot find template " + name);
+		return path;
 	}
 	
-	/** render the given task and write the output to the response */
-	private void renderFinal(ITask t, HttpServletRequest req, Map<String, String[]> reqParams, RequestHandler request, List<EmbeddedContent> embeddedContent, HttpServletResponse res) throws IOException {
-		PostAction po = render(t, reqParams, request, embeddedContent, "pages/");
-		
+	/**
+	 * Render the template of the given task and write the response
+	 * @param po the PostAction returned from {@link #render} for the task
+	 * @param pageKey the key the response is stored under in the {@link #pageCache}, or null if it should not be cached
+	 * @param pageGeneration the generation of the {@link #pageCache} before the task was created
+	 * @return the response if it should be cached or shared, in which case it has not been written; otherwise null
+	 */
+	private PageCache.Page renderFinal(ITask t, PostAction po, HttpServletRequest req, Map<String, String[]> reqParams, ObjectProvider injector, ServletRequestHandler request, List<EmbeddedContent> embeddedContent, String pageKey, long pageGeneration, HttpServletResponse res) throws IOException {
+		long nt = System.nanoTime();
+		PageCache.Page page = null;
 		if (po instanceof CustomPostAction) {
 			((CustomPostAction)po).respond(req, res);
 			
 		} else if (po instanceof StRenderPostAction) {
-			String stContent = ((StRenderPostAction)po).getStContent();
-			HttpHeaders.addNoCacheHeaders(res);
-			Writer w = getUtf8Writer(res);
+			StRenderPostAction stPo = (StRenderPostAction) po;
+			// a response which sets cookies is specific to the request
+			ByteArrayOutputStream pageBuffer = pageKey != null && !request.cookiesChanged ? new ByteArrayOutputStream() : null;
+			CompressingResponseStream out = null;
+			OutputStream target;
+			if (pageBuffer != null) {
+				target = pageBuffer;
+			} else {
+				HttpHeaders.addNoCacheHeaders(res);
+				out = makeCompressingStream(req, res);
+				target = out != null ? out : res.getOutputStream();
+			}
+			CountingOutputStream counter = new CountingOutputStream(target);
+			Writer w = getUtf8Writer(res, counter);
+			boolean completed = false;
+			long wt = System.nanoTime();
 			try {
 				if (t instanceof IAjaxRenderTask) {
-					IOHelpers.copy(new StringReader(stContent), w);
+					if (stPo instanceof StStreamPostAction)
+						((StStreamPostAction)stPo).write(new AutoIndentWriter(w));
+					else
+						IOHelpers.copy(new StringReader(stPo.getStContent()), w);
 
 				} else if (t instanceof IRenderTask) {
 					IRenderTask rt = (IRenderTask) t;
 
 					StringTemplate pageSt = pageStGroup.getInstanceOf("page");
 					pageSt.setAttribute("pagetitle", rt.getPageTitle());
-					pageSt.setAttribute("body", unsafeHtmlString(stContent));
+					pageSt.setAttribute("body", pageBody(stPo));
 
 					addEmbedded(embeddedContent, pageSt);
 
@@ -589,25 +1186,141 @@ public abstract class SpiderServlet extends HttpServlet {
 				} else {
 					throw new RuntimeException("Task " + t + " is of unknown type");
 				}
+				completed = true;
 			} finally {
-				w.close();
+				if (completed) {
+					w.close();
+				} else if (out != null) {
+					// a compressed response cannot have the error added to it; unless it can be
+					// discarded (nothing has been sent yet) it is completed with what was rendered
+					if (!out.abort())
+						log.warn("Rendering of " + t + " failed after " + counter.count + " bytes; the response sent is truncated");
+				} else {
+					// what was written so far is sent before the error
+					w.flush();
+				}
 			}
+			record(metricsName(t), Metric.RENDER, System.nanoTime() - wt);
+			if (pageBuffer != null)
+				page = pageCache.put(pageKey, pageGeneration, t.getClass(), res.getContentType(), pageBuffer.toByteArray());
+			record(metricsName(t), Metric.BYTES_WRITTEN, counter.count);
+		}
+		record(metricsName(t), Metric.PAGE, System.nanoTime() - nt);
+		return page;
+	}
+	
+	/** OutputStream that counts the bytes written to it */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count;
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+		@Override public void write(int b) throws IOException {
+			out.write(b);
+			count++;
 		}
+		@Override public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+	
+	/** Minimum size in bytes of a rendered response for it to be compressed */
+	private static final int COMPRESSION_THRESHOLD = 1024;
+	
+	/**
+	 * @return a stream that compresses the response with a content coding accepted by the client,
+	 * or null if the response should not be compressed. Responses are not compressed in debug mode,
+	 * since an error is then printed after the output already written.
+	 */
+	private CompressingResponseStream makeCompressingStream(HttpServletRequest req, HttpServletResponse res) {
+		if (debugMode)
+			return null;
+		
+		res.setHeader("Vary", "Accept-Encoding");
+		if (HttpHeaders.acceptsEncoding(req, "gzip"))
+			return new CompressingResponseStream(res, "gzip", COMPRESSION_THRESHOLD);
+		if (HttpHeaders.acceptsEncoding(req, "deflate"))
+			return new CompressingResponseStream(res, "deflate", COMPRESSION_THRESHOLD);
+		return null;
+	}
+	
+	/** @return the value of the body attribute of the page template for the given result of rendering the task */
+	private Object pageBody(final StRenderPostAction po) {
+		if (po instanceof StStreamPostAction) {
+			// write the task template directly to the output of the page template
+			return new StringTemplate() {
+				@Override public int write(StringTemplateWriter out) throws IOException {
+					return ((StStreamPostAction)po).write(out);
+				}
+			};
+		}
+		return unsafeHtmlString(po.getStContent());
 	}
 
-	/** @return a Writer that writes UTF-8 to the given response */
-	protected Writer getUtf8Writer(HttpServletResponse res) throws IOException {
+	/**
+	 * @return a Writer that writes UTF-8 to the given response
+	 * @deprecated rendered pages are written through a stream that may compress or buffer the
+	 * response, thus subclasses must override {@link #getUtf8Writer(HttpServletResponse, OutputStream)}
+	 * instead, which this method delegates to
+	 */
+	@Deprecated
+	protected final Writer getUtf8Writer(HttpServletResponse res) throws IOException {
+		return getUtf8Writer(res, res.getOutputStream());
+	}
+	
+	/**
+	 * Hook for the Writer used for all output of the servlet, i.e. both rendered pages and errors.
+	 * 
+	 * @return a Writer that writes UTF-8 to the given stream, which is the body of the given response
+	 */
+	protected Writer getUtf8Writer(HttpServletResponse res, OutputStream out) throws IOException {
 		res.setContentType("text/html; charset=utf-8");
-		Writer w = new OutputStreamWriter(res.getOutputStream(), "utf-8");
+		Writer w = new OutputStreamWriter(out, "utf-8");
 		return w;
 	}
 
 	/** Pattern to extract the part of the class name preceding the "Task" postfix */
 	private static final Pattern CLASS_NAME_PREFIX_PATTERN = Pattern.compile(".*\\.(.+)Task.*");
 
-	/** @return the PostAction returned from {@link StRenderer#actionAndRender(ObjectProvider, Map)} on the given task */
-	private PostAction render(ITask t, Map<String, String[]> reqParams, RequestHandler request, final List<EmbeddedContent> embeddedContent, final String relativeTemplatePath) {
-		StRenderer renderer = new StRenderer(stringTemplateFactory, t) {
+	/**
+	 * @param deferRender if true the template is not rendered, see {@link StRenderer#actionAndDeferRender(ObjectProvider, LifecycleHandlerSet, Map)}
+	 * @return the PostAction returned from {@link StRenderer#actionAndRender(ObjectProvider, LifecycleHandlerSet, Map)} on the given task
+	 */
+	private PostAction render(ITask t, Map<String, String[]> reqParams, ObjectProvider injector, RequestHandler request, List<EmbeddedContent> embeddedContent, String relativeTemplatePath, boolean deferRender) {
+		StRenderer renderer = makeRenderer(t, embeddedContent, relativeTemplatePath);
+		registerInputArgParser(renderer);
+
+		String name = metricsName(t);
+		long nt = System.nanoTime();
+		LifecycleHandlerSet hs = makeLifecycleHandlerSet(request);
+		// the template is rendered separately so the action and the rendering can be timed on their own
+		PostAction po = renderer.actionAndDeferRender(injector, hs, reqParams);
+		if (!deferRender && po instanceof AsyncPostAction)
+			po = getAsyncResult((AsyncPostAction) po, getAsyncActionTimeout());
+		long rt = System.nanoTime();
+		record(name, Metric.ACTION, rt - nt);
+		if (!deferRender && po instanceof StStreamPostAction) {
+			po = renderedPostAction(((StStreamPostAction)po).getStContent());
+			record(name, Metric.RENDER, System.nanoTime() - rt);
+		}
+		if (log.isInfoEnabled())
+			log.info("StRender of " + t.getClass().getSimpleName() + " in " + TimeUnit.MILLISECONDS.convert(System.nanoTime() - nt, TimeUnit.NANOSECONDS) + " ms");
+		return po;
+	}
+	
+	/** @return a {@link StRenderPostAction} with the given rendered content */
+	private static StRenderPostAction renderedPostAction(final String stContent) {
+		return new StRenderPostAction() {
+			@Implement public String getStContent() {
+				return stContent;
+			}
+		};
+	}
+	
+	/** @return the StRenderer for the given task, which may be null if the renderer is only used to load templates */
+	private StRenderer makeRenderer(ITask t, final List<EmbeddedContent> embeddedContent, final String relativeTemplatePath) {
+		return new StRenderer(stringTemplateFactory, t) {
 			@Override protected Pattern getClassNamePrefixPattern() {
 				return CLASS_NAME_PREFIX_PATTERN;
 			}
@@ -619,15 +1332,12 @@ public abstract class SpiderServlet extends HttpServlet {
 					addEmbedded(embeddedContent, st);
 				return super.renderFinal(st);
 			}
+			@Override protected int writeFinal(StringTemplate st, StringTemplateWriter out) throws IOException {
+				if (embeddedContent != null)
+					addEmbedded(embeddedContent, st);
+				return super.writeFinal(st, out);
+			}
 		};
-		registerInputArgParser(renderer);
-		
-		ObjectProvider injector = makeObjectProvider(request);
-
-		long nt = System.nanoTime();
-		PostAction po = renderer.actionAndRender(injector, makeLifecycleHandlerSet(request), reqParams);
-		log.info("StRender of " + t.getClass().getSimpleName() + " in " + TimeUnit.MILLISECONDS.convert(System.nanoTime() - nt, TimeUnit.NANOSECONDS) + " ms");
-		return po;
 	}
 	
 	private void addEmbedded(List<EmbeddedContent> embeddedContent, StringTemplate st) {
@@ -0,0 +1,77 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.medallia.spider.test.RenderTaskTestCase;
+import com.medallia.spider.testasync.AsyncServlet;
+import com.medallia.spider.testasync.st.AsyncTask;
+import com.medallia.spider.testasync.st.EmbeddingTask;
+
+/** Tests of tasks whose action methods return a Future, see {@link AsyncServlet} */
+public class SpiderServletAsyncTest extends RenderTaskTestCase {
+	
+	@Override protected ServletMock getServletMock() throws Exception {
+		return makeServletMock(AsyncServlet.class);
+	}
+	
+	private StRenderResult async(String mode) throws Exception {
+		return action(AsyncTask.class, Collections.singletonMap("mode", mode));
+	}
+	
+	/** a Future that is done when the action method returns */
+	public void testCompleted() throws Exception {
+		StRenderResult rr = async("done");
+		assertEquals(200, rr.getStatus());
+		assertHasContent(rr, "async result: done");
+	}
+	
+	/** a Future completed later; the mock request is not a Jetty request, so the continuation blocks */
+	public void testPending() throws Exception {
+		StRenderResult rr = async("pending");
+		assertEquals(200, rr.getStatus());
+		assertHasContent(rr, "async result: pending");
+	}
+	
+	/** a Future that fails gives an error */
+	public void testFailed() throws Exception {
+		StRenderResult rr = async("fail");
+		assertEquals(500, rr.getStatus());
+		assertHasContent(rr, "The asynchronous computation failed", NOT + "async result");
+	}
+	
+	/** a Future that is never completed gives an error after the timeout */
+	public void testTimeout() throws Exception {
+		long start = System.currentTimeMillis();
+		StRenderResult rr = async("never");
+		long elapsed = System.currentTimeMillis() - start;
+		assertEquals(500, rr.getStatus());
+		assertHasContent(rr, "Timed out waiting for the result");
+		assertTrue("Took " + elapsed + " ms", elapsed >= AsyncServlet.TIMEOUT_MILLIS && elapsed < 10000);
+	}
+	
+	/** an embedded task returning a Future is waited for before the page is rendered */
+	public void testEmbedded() throws Exception {
+		Map<String, String> none = Collections.emptyMap();
+		StRenderResult rr = action(EmbeddingTask.class, none);
+		assertEquals(200, rr.getStatus());
+		assertHasContent(rr, "embedding widget 42");
+	}
+
+}
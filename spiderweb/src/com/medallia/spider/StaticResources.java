@@ -1,11 +1,21 @@
 package com.medallia.spider;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import com.medallia.tiny.Empty;
+import com.medallia.tiny.Encoding;
 import com.medallia.tiny.Implement;
 import com.medallia.tiny.MimeType;
 
@@ -19,6 +29,18 @@ public class StaticResources {
 		boolean exists();
 		String getMimeType();
 		void copyTo(OutputStream stream) throws IOException;
+		/** @return the length of the content in bytes, or -1 if not known */
+		int getLength();
+		/** @return MD5 hash of the content as a hex string */
+		String getContentHash();
+		/** @return the time the resource was last modified, in milliseconds since the epoch, or 0 if not known */
+		long getLastModified();
+		/**
+		 * @return the content compressed with gzip, or null if the resource should be sent uncompressed
+		 * (e.g. images, which are already compressed, or resources not held in memory); the returned
+		 * array must not be modified
+		 */
+		byte[] getGzippedContent();
 	}
 	
 	/** map from URI ending to resource path, i.e. package name. */
@@ -36,6 +58,7 @@ public class StaticResources {
 		}
 	}
 	
+	/** @return a StaticResourceLookup which reads the resource from the class path each time it is used */
 	public static StaticResourceLookup makeStaticResourceLookup(final Class<?> clazz) {
 		return new StaticResourceLookup() {
 			@Implement public StaticResource findStaticResource(String uri) {
@@ -46,19 +69,39 @@ public class StaticResources {
 
 					int slashIndex = uri.indexOf('/');
 					final String resourceName = uri.substring(slashIndex < 0  ? 0 : slashIndex + 1, uri.length());
-					final InputStream in = path != null ? clazz.getResourceAsStream(path + "/" + resourceName) : null;
+					final URL url = path != null ? clazz.getResource(path + "/" + resourceName) : null;
+					if (url != null) {
+						try {
+							return new StreamedResource(url, MimeType.getMimeTypeForExtension(ext));
+						} catch (IOException e) {
+							throw new RuntimeException("Failed to read resource " + resourceName + " in " + path + " for " + clazz, e);
+						}
+					}
 					
 					return new StaticResource() {
 						@Implement public boolean exists() {
-							return in != null;
+							return false;
 						}
 						@Implement public String getMimeType() {
 							return MimeType.getMimeTypeForExtension(ext);
 						}
 						@Implement public void copyTo(OutputStream stream) throws IOException {
-							if (!exists())
-								throw new RuntimeException("Resource " + resourceName + " in " + path + " for " + clazz + " not found");
-							IOHelpers.copy(in, stream);
+							throw notFound();
+						}
+						@Implement public int getLength() {
+							throw notFound();
+						}
+						@Implement public String getContentHash() {
+							throw notFound();
+						}
+						@Implement public long getLastModified() {
+							throw notFound();
+						}
+						@Implement public byte[] getGzippedContent() {
+							throw notFound();
+						}
+						private RuntimeException notFound() {
+							return new RuntimeException("Resource " + resourceName + " in " + path + " for " + clazz + " not found");
 						}
 					};
 				}
@@ -67,4 +110,205 @@ public class StaticResources {
 		};
 	}
 	
+	/** StaticResource which streams the content from the URL each time it is used */
+	private static class StreamedResource implements StaticResource {
+		private final URL url;
+		private final String mimeType;
+		private final int length;
+		private final long lastModified;
+		private volatile String contentHash;
+		
+		StreamedResource(URL url, String mimeType) throws IOException {
+			this.url = url;
+			this.mimeType = mimeType;
+			URLConnection conn = url.openConnection();
+			length = conn.getContentLength();
+			lastModified = conn.getLastModified();
+			// reading the headers connects, which for some protocols (e.g. file) opens the stream
+			conn.getInputStream().close();
+		}
+		@Implement public boolean exists() {
+			return true;
+		}
+		@Implement public String getMimeType() {
+			return mimeType;
+		}
+		@Implement public void copyTo(OutputStream stream) throws IOException {
+			InputStream in = url.openStream();
+			try {
+				IOHelpers.copy(in, stream);
+			} finally {
+				in.close();
+			}
+		}
+		@Implement public int getLength() {
+			return length;
+		}
+		@Implement public String getContentHash() {
+			String h = contentHash;
+			if (h == null) {
+				try {
+					MessageDigest md5 = MessageDigest.getInstance("MD5");
+					copyTo(new DigestOutputStream(new NullOutputStream(), md5));
+					contentHash = h = Encoding.hexEncode(md5.digest());
+				} catch (NoSuchAlgorithmException e) {
+					throw new AssertionError(e);
+				} catch (IOException e) {
+					throw new RuntimeException("Failed to read " + url, e);
+				}
+			}
+			return h;
+		}
+		@Implement public long getLastModified() {
+			return lastModified;
+		}
+		@Implement public byte[] getGzippedContent() {
+			return null;
+		}
+	}
+	
+	/** OutputStream which discards everything written to it */
+	private static class NullOutputStream extends OutputStream {
+		@Override public void write(int b) { }
+		@Override public void write(byte[] b, int off, int len) { }
+	}
+	
+	/** StaticResource with the content, and the gzipped content, held in memory */
+	private static class LoadedResource implements StaticResource {
+		private final String mimeType;
+		private final byte[] content;
+		private final long lastModified;
+		private final String contentHash;
+		/** the gzipped content, or null if it should not be compressed */
+		private final byte[] gzippedContent;
+		
+		/** Read the content of the given resource into memory */
+		LoadedResource(StaticResource sr) throws IOException {
+			mimeType = sr.getMimeType();
+			lastModified = sr.getLastModified();
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(sr.getLength(), 32));
+			sr.copyTo(buffer);
+			content = buffer.toByteArray();
+			contentHash = Encoding.md5(content);
+			// built up front so that the size is known when the resource is added to the cache
+			gzippedContent = isCompressible(mimeType) ? gzip(content) : null;
+		}
+		@Implement public boolean exists() {
+			return true;
+		}
+		@Implement public String getMimeType() {
+			return mimeType;
+		}
+		@Implement public void copyTo(OutputStream stream) throws IOException {
+			stream.write(content);
+		}
+		@Implement public int getLength() {
+			return content.length;
+		}
+		@Implement public String getContentHash() {
+			return contentHash;
+		}
+		@Implement public long getLastModified() {
+			return lastModified;
+		}
+		@Implement public byte[] getGzippedContent() {
+			return gzippedContent;
+		}
+		/** @return the number of bytes of memory held by this resource */
+		int getSize() {
+			return content.length + (gzippedContent != null ? gzippedContent.length : 0);
+		}
+		private static boolean isCompressible(String mimeType) {
+			return mimeType.startsWith("text/") || mimeType.endsWith("javascript");
+		}
+		/** @return the given content compressed with gzip, or null if that is not smaller */
+		private static byte[] gzip(byte[] content) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length / 2);
+			try {
+				GZIPOutputStream out = new GZIPOutputStream(buffer);
+				out.write(content);
+				out.close();
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+			return buffer.size() < content.length ? buffer.toByteArray() : null;
+		}
+	}
+	
+	/**
+	 * StaticResourceLookup which keeps the resources found in memory; the resources
+	 * least recently used are evicted when their total size, including the gzipped
+	 * content, exceeds a given limit. Resources larger than the limit, and all
+	 * resources while the cache is disabled, are streamed from the underlying lookup.
+	 */
+	public static class CachingStaticResourceLookup implements StaticResourceLookup {
+		private final StaticResourceLookup lookup;
+		private final int maxBytes;
+		
+		/** map from URI to resource, in access order; guarded by itself */
+		private final Map<String, LoadedResource> cache = new LinkedHashMap<String, LoadedResource>(16, 0.75f, true);
+		private int cachedBytes;
+		private volatile boolean enabled = true;
+		
+		/**
+		 * @param lookup used to find the resources not in the cache
+		 * @param maxBytes maximum total size of the cached resources
+		 */
+		public CachingStaticResourceLookup(StaticResourceLookup lookup, int maxBytes) {
+			this.lookup = lookup;
+			this.maxBytes = maxBytes;
+		}
+		
+		/** Turn the cache on or off, e.g. so that changes to the resources are seen in debug mode; this clears the cache */
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+			synchronized (cache) {
+				cache.clear();
+				cachedBytes = 0;
+			}
+		}
+		
+		@Implement public StaticResource findStaticResource(String uri) {
+			if (!enabled)
+				return lookup.findStaticResource(uri);
+			
+			LoadedResource lr;
+			synchronized (cache) {
+				lr = cache.get(uri);
+			}
+			if (lr != null)
+				return lr;
+			
+			StaticResource sr = lookup.findStaticResource(uri);
+			// resources that are not found are not cached, since any URI can be requested
+			if (sr == null || !sr.exists() || sr.getLength() < 0 || sr.getLength() > maxBytes)
+				return sr;
+			
+			try {
+				lr = new LoadedResource(sr);
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to read resource " + uri, e);
+			}
+			if (lr.getSize() <= maxBytes)
+				add(uri, lr);
+			return lr;
+		}
+		
+		private void add(String uri, LoadedResource lr) {
+			synchronized (cache) {
+				LoadedResource old = cache.put(uri, lr);
+				if (old != null)
+					cachedBytes -= old.getSize();
+				cachedBytes += lr.getSize();
+				
+				Iterator<LoadedResource> it = cache.values().iterator();
+				while (cachedBytes > maxBytes) {
+					LoadedResource eldest = it.next();
+					it.remove();
+					cachedBytes -= eldest.getSize();
+				}
+			}
+		}
+	}
+	
 }
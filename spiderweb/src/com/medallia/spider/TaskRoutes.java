@@ -0,0 +1,222 @@
+/*
+ * This file is part of the Spider Web Framework.
+ *
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.ObjectProvider;
+import com.medallia.tiny.ObjectProvider.ArgsPlan;
+import com.medallia.tiny.Strings;
+
+/**
+ * Table that maps the last part of a URI to the constructor of the task
+ * class it refers to. The task package is scanned once by {@link #scan()},
+ * and names not found by the scan are resolved (and cached) the first time
+ * they are requested. Names that do not map to a task are cached as well,
+ * in a separate bounded map, so each request needs only a hash lookup or two
+ * and never takes a lock.
+ */
+class TaskRoutes {
+
+	/** Maximum number of names which do not map to a task that are cached; all of them are discarded when it is reached */
+	static final int MAX_NEGATIVE_ENTRIES = 1024;
+
+	/** The result of resolving a name; exactly one of cons and error is non-null unless the name is not a task */
+	static class Route {
+		private final Constructor<ITask> cons;
+		/** the plan for the arguments of the constructor, computed once since it is invoked on each request */
+		private final ArgsPlan plan;
+		private final String error;
+		Route(Constructor<ITask> cons, String error) {
+			this.cons = cons;
+			this.plan = cons != null ? ObjectProvider.argsPlanFor(cons) : null;
+			this.error = error;
+		}
+		boolean isNegative() {
+			return cons == null;
+		}
+		/** @return the constructor of the task */
+		Constructor<ITask> getConstructor() {
+			return cons;
+		}
+		/** @return the {@link ArgsPlan} of {@link #getConstructor()} */
+		ArgsPlan getArgsPlan() {
+			return plan;
+		}
+	}
+
+	private final ClassLoader classLoader;
+	private final String taskPackage;
+
+	/** map from the last part of the URI to the route for it, for the names that map to a task */
+	private final ConcurrentMap<String, Route> routes = Empty.concurrentMap();
+	/** the routes for names that do not map to a task */
+	private final ConcurrentMap<String, Route> negativeRoutes = Empty.concurrentMap();
+	/** approximate number of entries in {@link #negativeRoutes} */
+	private final AtomicInteger negativeEntries = new AtomicInteger();
+
+	/**
+	 * @param classLoader used to load the task classes
+	 * @param taskPackage name of the package the task classes are in, including the trailing '.'
+	 */
+	TaskRoutes(ClassLoader classLoader, String taskPackage) {
+		this.classLoader = classLoader;
+		this.taskPackage = taskPackage;
+	}
+
+	/**
+	 * @return the constructor of the task the given name (the last part of the URI) maps to,
+	 * or null if it maps to a class which is not a task. A RuntimeException is thrown
+	 * if there is no class for the name or the class does not have exactly one constructor.
+	 */
+	Constructor<ITask> findConstructor(String name) {
+		Route r = findRoute(name);
+		return r != null ? r.cons : null;
+	}
+	
+	/** @return the route of the task the given name maps to; as {@link #findConstructor(String)}, but for the whole route */
+	Route findRoute(String name) {
+		Route r = routes.get(name);
+		if (r == null) {
+			r = negativeRoutes.get(name);
+			if (r == null)
+				r = add(name, resolve(name));
+		}
+
+		if (r.error != null)
+			throw new RuntimeException(r.error);
+		return r.isNegative() ? null : r;
+	}
+
+	private Route add(String name, Route r) {
+		if (r.isNegative()) {
+			if (negativeEntries.get() >= MAX_NEGATIVE_ENTRIES) {
+				// start over rather than track which names are used, which would need a lock on each lookup
+				negativeRoutes.clear();
+				negativeEntries.set(0);
+			}
+			if (negativeRoutes.putIfAbsent(name, r) == null)
+				negativeEntries.incrementAndGet();
+			return r;
+		}
+		Route old = routes.putIfAbsent(name, r);
+		return old != null ? old : r;
+	}
+
+	/** @return the route for the given name, which is mapped to a class name the same way as done by {@link Task#uriNameForTask(Class)} */
+	private Route resolve(String name) {
+		String s = Strings.capitalizeFirstCharacter(name);
+		if (s.length() == 0)
+			return new Route(null, null);
+
+		String cn = taskPackage + s + "Task";
+		Class<?> c;
+		try {
+			c = Class.forName(cn, true, classLoader);
+		} catch (ClassNotFoundException e) {
+			return new Route(null, "No class " + cn);
+		}
+		if (!ITask.class.isAssignableFrom(c))
+			return new Route(null, null);
+
+		@SuppressWarnings({"unchecked"})
+		Constructor<ITask>[] consArr = (Constructor<ITask>[]) c.getConstructors();
+		if (consArr.length != 1)
+			return new Route(null, "Class " + c + " must have exactly one constructor");
+
+		// skip the access check done by Constructor.newInstance on each request
+		Constructor<ITask> cons = consArr[0];
+		cons.setAccessible(true);
+		return new Route(cons, null);
+	}
+
+	/**
+	 * Find all classes in the task package with a name ending in "Task" and
+	 * add routes for them. This avoids loading the classes while handling
+	 * requests.
+	 *
+	 * @return the number of routes added
+	 */
+	int scan() throws IOException {
+		int n = 0;
+		for (String simpleName : findTaskClassNames()) {
+			String name = simpleName.substring(0, 1).toLowerCase() + simpleName.substring(1, simpleName.length() - 4);
+			Route r = resolve(name);
+			if (!r.isNegative()) {
+				routes.put(name, r);
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/** @return the task classes routes have been added for so far */
+	List<Class<?>> getTaskClasses() {
+		List<Class<?>> l = Empty.list();
+		for (Route r : routes.values())
+			l.add(r.cons.getDeclaringClass());
+		return l;
+	}
+
+	/** @return the simple name of all the top level classes in the task package ending in "Task" */
+	private List<String> findTaskClassNames() throws IOException {
+		List<String> l = Empty.list();
+		String path = taskPackage.replace('.', '/');
+		Enumeration<URL> urls = classLoader.getResources(path);
+		while (urls.hasMoreElements()) {
+			URL url = urls.nextElement();
+			if ("file".equals(url.getProtocol())) {
+				String[] files = new File(URLDecoder.decode(url.getPath(), "utf-8")).list();
+				if (files != null) {
+					for (String f : files)
+						addIfTaskClass(l, f);
+				}
+			} else {
+				URLConnection conn = url.openConnection();
+				if (conn instanceof JarURLConnection) {
+					JarFile jar = ((JarURLConnection) conn).getJarFile();
+					Enumeration<JarEntry> entries = jar.entries();
+					while (entries.hasMoreElements()) {
+						String en = entries.nextElement().getName();
+						if (en.startsWith(path) && en.indexOf('/', path.length()) < 0)
+							addIfTaskClass(l, en.substring(path.length()));
+					}
+				}
+			}
+		}
+		return l;
+	}
+
+	private void addIfTaskClass(List<String> l, String fileName) {
+		if (fileName.endsWith("Task.class") && fileName.indexOf('$') < 0 && fileName.length() > "Task.class".length())
+			l.add(fileName.substring(0, fileName.length() - ".class".length()));
+	}
+
+}
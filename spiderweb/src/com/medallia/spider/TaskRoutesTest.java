@@ -0,0 +1,181 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import junit.framework.TestCase;
+
+import com.medallia.spider.testroutes.BarTask;
+import com.medallia.spider.testroutes.FooTask;
+import com.medallia.tiny.Empty;
+
+/** Tests for {@link TaskRoutes}, using the classes in the testroutes package */
+public class TaskRoutesTest extends TestCase {
+	
+	private static final String PACKAGE = FooTask.class.getPackage().getName() + ".";
+	private static final String PATH = PACKAGE.replace('.', '/');
+	
+	/** Counts the classes in {@link #PACKAGE} loaded through it; it can also hide them and their directory */
+	private static class CountingClassLoader extends ClassLoader {
+		private final boolean hide;
+		private int loads;
+		CountingClassLoader(ClassLoader parent, boolean hide) {
+			super(parent);
+			this.hide = hide;
+		}
+		@Override protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith(PACKAGE)) {
+				loads++;
+				if (hide)
+					throw new ClassNotFoundException(name);
+			}
+			return super.loadClass(name, resolve);
+		}
+		@Override public Enumeration<URL> getResources(String name) throws IOException {
+			if (hide && name.startsWith(PATH))
+				return Collections.enumeration(Collections.<URL>emptyList());
+			return super.getResources(name);
+		}
+		synchronized int getLoads() {
+			return loads;
+		}
+	}
+	
+	private final CountingClassLoader loader = new CountingClassLoader(getClass().getClassLoader(), false);
+	
+	/** @return the simple names of the task classes of the given TaskRoutes */
+	private Set<String> taskClassNames(TaskRoutes routes) {
+		Set<String> s = Empty.hashSet();
+		for (Class<?> c : routes.getTaskClasses())
+			s.add(c.getSimpleName());
+		return s;
+	}
+	
+	/** Test the scan of the task package in a directory */
+	public void testScanDirectory() throws Exception {
+		TaskRoutes routes = new TaskRoutes(loader, PACKAGE);
+		assertEquals(2, routes.scan());
+		assertEquals(Empty.hashSet(Arrays.asList("FooTask", "BarTask")), taskClassNames(routes));
+		
+		int loads = loader.getLoads();
+		assertSame(FooTask.class, routes.findConstructor("foo").getDeclaringClass());
+		assertSame(BarTask.class, routes.findConstructor("bar").getDeclaringClass());
+		assertEquals("no classes are loaded for names found by the scan", loads, loader.getLoads());
+	}
+	
+	/** Test the scan of the task package in a jar file */
+	public void testScanJar() throws Exception {
+		File jar = File.createTempFile("taskroutes", ".jar");
+		try {
+			writeJar(jar, "FooTask", "BarTask", "HelperTask", "TwoConstructorsTask");
+			CountingClassLoader hiding = new CountingClassLoader(getClass().getClassLoader(), true);
+			URLClassLoader jarLoader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, hiding);
+			TaskRoutes routes = new TaskRoutes(jarLoader, PACKAGE);
+			assertEquals(2, routes.scan());
+			assertEquals(Empty.hashSet(Arrays.asList("FooTask", "BarTask")), taskClassNames(routes));
+			// the classes are loaded from the jar, not from the directory
+			Class<?> c = routes.findConstructor("foo").getDeclaringClass();
+			assertEquals(FooTask.class.getName(), c.getName());
+			assertSame(jarLoader, c.getClassLoader());
+		} finally {
+			jar.delete();
+		}
+	}
+	
+	/** write a jar with the given classes from {@link #PACKAGE}, including the entries for the directories */
+	private void writeJar(File jar, String... classNames) throws IOException {
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			int k = 0;
+			while ((k = PATH.indexOf('/', k) + 1) > 0)
+				out.putNextEntry(new JarEntry(PATH.substring(0, k)));
+			for (String cn : classNames) {
+				String name = PATH + cn + ".class";
+				out.putNextEntry(new JarEntry(name));
+				InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+				try {
+					IOHelpers.copy(in, out);
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	/** Test the lookup of names which have not been scanned */
+	public void testLookup() throws Exception {
+		TaskRoutes routes = new TaskRoutes(loader, PACKAGE);
+		assertSame(FooTask.class, routes.findConstructor("foo").getDeclaringClass());
+		assertNull("not a task", routes.findConstructor("helper"));
+		assertFails(routes, "twoConstructors", "must have exactly one constructor");
+		assertFails(routes, "missing", "No class " + PACKAGE + "MissingTask");
+		assertNull("empty name", routes.findConstructor(""));
+		
+		int loads = loader.getLoads();
+		assertSame(FooTask.class, routes.findConstructor("foo").getDeclaringClass());
+		assertNull(routes.findConstructor("helper"));
+		assertFails(routes, "twoConstructors", "must have exactly one constructor");
+		assertFails(routes, "missing", "No class");
+		assertEquals("the results are cached", loads, loader.getLoads());
+	}
+	
+	/** Test that the names which do not map to a task are discarded when there are too many, and cached again afterwards */
+	public void testNegativeCacheBound() throws Exception {
+		TaskRoutes routes = new TaskRoutes(loader, PACKAGE);
+		for (int i = 0; i < TaskRoutes.MAX_NEGATIVE_ENTRIES; i++)
+			assertFails(routes, "missing" + i, "No class");
+		int loads = loader.getLoads();
+		// the cache is full, but all the names are still in it
+		assertFails(routes, "missing0", "No class");
+		assertFails(routes, "missing" + (TaskRoutes.MAX_NEGATIVE_ENTRIES - 1), "No class");
+		assertEquals(loads, loader.getLoads());
+		
+		// a new name discards the others
+		assertFails(routes, "other", "No class");
+		assertEquals(loads + 1, loader.getLoads());
+		assertFails(routes, "other", "No class");
+		assertEquals(loads + 1, loader.getLoads());
+		assertFails(routes, "missing0", "No class");
+		assertEquals(loads + 2, loader.getLoads());
+		assertFails(routes, "missing0", "No class");
+		assertEquals(loads + 2, loader.getLoads());
+	}
+	
+	private void assertFails(TaskRoutes routes, String name, String message) {
+		try {
+			routes.findConstructor(name);
+			fail("Expected " + name + " to fail");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+}
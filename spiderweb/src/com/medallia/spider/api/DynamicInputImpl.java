@@ -52,28 +52,55 @@ public class DynamicInputImpl implements DynamicInput {
 	 * Method used for parse values for the methods declared in {@link Input}.
 	 */
 	public <X> X getInput(String name, Class<X> type, AnnotatedElement anno) {
-		if (type.isArray() && anno.isAnnotationPresent(Input.MultiValued.class)) {
+		@SuppressWarnings("unchecked")
+		X x = (X) getInput(new InputSpec(name, type, anno));
+		return x;
+	}
+	
+	/**
+	 * The information needed to parse an input variable; this is extracted once from
+	 * the method declaring the variable so no annotation lookups are needed when parsing.
+	 */
+	static class InputSpec {
+		private final String name;
+		private final Class<?> type;
+		private final boolean multiValued;
+		private final Input.List list;
+		/** the separator of the {@link Input.List} annotation if it is a literal string; null otherwise */
+		private final String literalSeparator;
+		/** the method declaring the variable; used in error messages */
+		private final AnnotatedElement anno;
+		InputSpec(String name, Class<?> type, AnnotatedElement anno) {
+			this.name = name;
+			this.type = type;
+			this.multiValued = type.isArray() && anno.isAnnotationPresent(Input.MultiValued.class);
+			this.list = anno.getAnnotation(Input.List.class);
+			String sep = list == null ? null : list.separator();
+			this.literalSeparator = sep != null && sep.length() > 0 && Strings.isLiteralRegex(sep) ? sep : null;
+			this.anno = anno;
+		}
+	}
+	
+	/** @return the parsed value of the input variable described by the given InputSpec */
+	Object getInput(InputSpec spec) {
+		Class<?> type = spec.type;
+		if (spec.multiValued) {
 			// return type is an array; grab all
-			Object o = inputParams.get(name);
-			return type.cast(parseMultiValue(type, o, anno));
+			Object o = inputParams.get(spec.name);
+			return type.cast(parseMultiValue(type, o, spec));
 		}
 		
-		String v = Strings.extract(inputParams.get(name));
+		String v = Strings.extract(inputParams.get(spec.name));
 		
 		// boolean is used for checkboxes, and false is encoded as a missing value
 		if (type == Boolean.class || type == Boolean.TYPE) {
-			@SuppressWarnings("unchecked")
-			X x = (X) Boolean.valueOf(v != null);
-			return x;
+			return Boolean.valueOf(v != null);
 		}
 		
-		// the remaining types have proper null values
-		if (v == null) return null;
+		// the remaining types have proper null values, except the primitives which get their default value
+		if (v == null) return InputConverters.missingValue(type);
 		
-		// Do not use Class.cast here since it does not work on primitive types
-		@SuppressWarnings("unchecked")
-		X x = (X) parseSingleValue(type, v, anno);
-		return x;
+		return parseSingleValue(type, v, spec);
 	}
 	
 	/**
@@ -82,7 +109,7 @@ public class DynamicInputImpl implements DynamicInput {
 	 * @return parsed data as per parseSingleValue
 	 * @throws AssertionError if parseSingleValue does
 	 */
-	private Object parseMultiValue(Class<?> rt, Object data, AnnotatedElement anno) throws AssertionError {
+	private Object parseMultiValue(Class<?> rt, Object data, InputSpec spec) throws AssertionError {
 		String[] xs;
 		// normalize the zero-and-one cases
 		if (data == null) {
@@ -96,35 +123,30 @@ public class DynamicInputImpl implements DynamicInput {
 		Class<?> comp = rt.getComponentType();
 		Object arr = Array.newInstance(rt.getComponentType(), xs.length);
 		for (int i=0; i < xs.length; i++) {
-			Array.set(arr, i, parseSingleValue(comp, xs[i], anno));
+			Array.set(arr, i, parseSingleValue(comp, xs[i], spec));
 		}
 		return arr;
 	}
 
-	private Object parseSingleValue(Class<?> rt, String v, AnnotatedElement anno) throws AssertionError {
+	private Object parseSingleValue(Class<?> rt, String v, InputSpec spec) throws AssertionError {
 		if (rt.isEnum()) {
-			String vlow = v.toLowerCase();
-			for (Enum e : rt.asSubclass(Enum.class).getEnumConstants()) {
-				if (e.name().toLowerCase().equals(vlow)) return e;
-			}
+			Enum<?> e = InputConverters.findEnumConstant(rt, v);
+			if (e != null) return e;
 			throw new AssertionError("Enum constant not found: " + v);
-		} else if (rt == Integer.class || rt == Integer.TYPE) {
-			return Integer.valueOf(v);
-		} else if (rt == String.class) {
-			return v;
 		} else if (rt.isArray()) {
-			Input.List ann = anno.getAnnotation(Input.List.class);
-			if (ann == null) throw new AssertionError("Array type but no annotation (see "+Input.class+"): "+anno);
-			String separator = ann.separator();
-			String[] strVals = v.split(separator, -1);
+			Input.List ann = spec.list;
+			if (ann == null) throw new AssertionError("Array type but no annotation (see "+Input.class+"): "+spec.anno);
+			String[] strVals = spec.literalSeparator != null ? Strings.splitLiteral(v, spec.literalSeparator) : v.split(ann.separator(), -1);
 			Class<?> arrayType = rt.getComponentType();
 			Object a = Array.newInstance(arrayType, strVals.length);
 			for (int i = 0; i < strVals.length; i++) {
-				Array.set(a, i, parseSingleValue(arrayType, strVals[i], anno));
+				Array.set(a, i, parseSingleValue(arrayType, strVals[i], spec));
 			}
 			return a;
 		} else {
 			InputArgParser<?> argParser = inputArgParsers.get(rt);
+			if (argParser == null)
+				argParser = InputConverters.findParser(rt);
 			if (argParser != null) {
 				return argParser.parse(v);
 			}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.api;
+
+import java.lang.reflect.Array;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+
+import com.medallia.spider.api.StRenderer.InputArgParser;
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.Implement;
+
+/**
+ * The built-in parsers for the types of input variables that do not need a
+ * registered {@link InputArgParser}: the primitive types and their wrappers,
+ * {@link String}, {@link Date}, {@link UUID} and enums. Booleans are handled
+ * by {@link DynamicInputImpl} since false is encoded as a missing value.
+ */
+class InputConverters {
+
+	/** map from type to the built-in parser for it */
+	private static final Map<Class<?>, InputArgParser<?>> PARSERS = Empty.hashMap();
+	
+	/** map from primitive type to its default value, i.e. the value of a field not yet assigned */
+	private static final Map<Class<?>, Object> PRIMITIVE_DEFAULTS = Empty.hashMap();
+	
+	private static <X> void register(Class<X> type, Class<X> primitive, InputArgParser<X> parser) {
+		PARSERS.put(type, parser);
+		if (primitive != null) {
+			PARSERS.put(primitive, parser);
+			PRIMITIVE_DEFAULTS.put(primitive, Array.get(Array.newInstance(primitive, 1), 0));
+		}
+	}
+	
+	/** format of {@link Date} values; the same as used by the HTML date input element */
+	private static final String DATE_FORMAT = "yyyy-MM-dd";
+	
+	/** SimpleDateFormat is not thread safe, so keep one per thread */
+	private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT_TL = new ThreadLocal<SimpleDateFormat>() {
+		@Override protected SimpleDateFormat initialValue() {
+			SimpleDateFormat df = new SimpleDateFormat(DATE_FORMAT);
+			df.setLenient(false);
+			return df;
+		}
+	};
+	
+	static {
+		register(String.class, null, new InputArgParser<String>() {
+			@Implement public String parse(String str) { return str; }
+		});
+		register(Integer.class, Integer.TYPE, new InputArgParser<Integer>() {
+			@Implement public Integer parse(String str) { return Integer.valueOf(str); }
+		});
+		register(Long.class, Long.TYPE, new InputArgParser<Long>() {
+			@Implement public Long parse(String str) { return Long.valueOf(str); }
+		});
+		register(Short.class, Short.TYPE, new InputArgParser<Short>() {
+			@Implement public Short parse(String str) { return Short.valueOf(str); }
+		});
+		register(Byte.class, Byte.TYPE, new InputArgParser<Byte>() {
+			@Implement public Byte parse(String str) { return Byte.valueOf(str); }
+		});
+		register(Double.class, Double.TYPE, new InputArgParser<Double>() {
+			@Implement public Double parse(String str) { return Double.valueOf(str); }
+		});
+		register(Float.class, Float.TYPE, new InputArgParser<Float>() {
+			@Implement public Float parse(String str) { return Float.valueOf(str); }
+		});
+		register(Character.class, Character.TYPE, new InputArgParser<Character>() {
+			@Implement public Character parse(String str) {
+				if (str.length() != 1)
+					throw new IllegalArgumentException("Not a single character: " + str);
+				return Character.valueOf(str.charAt(0));
+			}
+		});
+		register(Date.class, null, new InputArgParser<Date>() {
+			@Implement public Date parse(String str) {
+				try {
+					return DATE_FORMAT_TL.get().parse(str);
+				} catch (ParseException e) {
+					throw new IllegalArgumentException("Date not in format " + DATE_FORMAT + ": " + str, e);
+				}
+			}
+		});
+		register(UUID.class, null, new InputArgParser<UUID>() {
+			@Implement public UUID parse(String str) { return UUID.fromString(str); }
+		});
+	}
+	
+	/** @return the built-in parser for the given type, or null if there is none */
+	static InputArgParser<?> findParser(Class<?> type) {
+		return PARSERS.get(type);
+	}
+	
+	/** @return the value of a missing input variable of the given type: the default value of a primitive type, otherwise null */
+	static Object missingValue(Class<?> type) {
+		return PRIMITIVE_DEFAULTS.get(type);
+	}
+	
+	/** map from enum class to its constants keyed by their lower case names; stored for performance reasons */
+	private static final ConcurrentMap<Class<?>, Map<String, Enum<?>>> ENUM_CONSTANTS_MAP = Empty.concurrentMap();
+	
+	/**
+	 * @return the constant of the given enum with a name equal to the given string, ignoring case;
+	 * null if there is no such constant
+	 */
+	static Enum<?> findEnumConstant(Class<?> enumClass, String name) {
+		Map<String, Enum<?>> m = ENUM_CONSTANTS_MAP.get(enumClass);
+		if (m == null) {
+			m = Empty.hashMap();
+			for (Enum<?> e : enumClass.asSubclass(Enum.class).getEnumConstants()) {
+				String k = e.name().toLowerCase();
+				// if names only differ in case the first one wins
+				if (!m.containsKey(k))
+					m.put(k, e);
+			}
+			ENUM_CONSTANTS_MAP.put(enumClass, m);
+		}
+		return m.get(name.toLowerCase());
+	}
+
+}
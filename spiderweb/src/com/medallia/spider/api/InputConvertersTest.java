@@ -0,0 +1,105 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.api;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.medallia.spider.api.StRenderer.InputArgParser;
+import com.medallia.tiny.Empty;
+
+public class InputConvertersTest extends TestCase {
+	
+	private enum Color { RED, DARK_BLUE }
+	
+	private static Object parse(Class<?> type, String str) {
+		InputArgParser<?> parser = InputConverters.findParser(type);
+		assertNotNull("No parser for " + type, parser);
+		return parser.parse(str);
+	}
+	
+	public void testPrimitives() {
+		assertEquals(Integer.valueOf(-17), parse(Integer.TYPE, "-17"));
+		assertEquals(Integer.valueOf(42), parse(Integer.class, "42"));
+		assertEquals(Long.valueOf(1L << 40), parse(Long.TYPE, String.valueOf(1L << 40)));
+		assertEquals(Double.valueOf(2.5), parse(Double.TYPE, "2.5"));
+		assertEquals(Character.valueOf('x'), parse(Character.TYPE, "x"));
+	}
+	
+	public void testMalformedNumber() {
+		try {
+			parse(Integer.TYPE, "12abc");
+			fail("Expected NumberFormatException");
+		} catch (NumberFormatException e) {
+			// expected
+		}
+		try {
+			parse(Byte.class, "300");
+			fail("Expected NumberFormatException");
+		} catch (NumberFormatException e) {
+			// expected
+		}
+	}
+	
+	public void testDate() {
+		Calendar c = Calendar.getInstance();
+		c.setTime((Date) parse(Date.class, "2010-03-04"));
+		assertEquals(2010, c.get(Calendar.YEAR));
+		assertEquals(Calendar.MARCH, c.get(Calendar.MONTH));
+		assertEquals(4, c.get(Calendar.DAY_OF_MONTH));
+	}
+	
+	public void testInvalidDate() {
+		for (String s : new String[] { "yesterday", "04.03.2010", "2010-02-30" }) {
+			try {
+				parse(Date.class, s);
+				fail("Expected IllegalArgumentException for " + s);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+	
+	public void testNoBuiltInParser() {
+		assertNull(InputConverters.findParser(Boolean.TYPE));
+		assertNull(InputConverters.findParser(Object.class));
+	}
+	
+	public void testEnumIgnoresCase() {
+		assertEquals(Color.RED, InputConverters.findEnumConstant(Color.class, "red"));
+		assertEquals(Color.RED, InputConverters.findEnumConstant(Color.class, "Red"));
+		assertEquals(Color.DARK_BLUE, InputConverters.findEnumConstant(Color.class, "dark_BLUE"));
+		assertNull(InputConverters.findEnumConstant(Color.class, "green"));
+	}
+	
+	public void testMissingValue() {
+		Map<String, String[]> params = Empty.hashMap();
+		params.put("n", new String[] { "5" });
+		DynamicInputImpl input = new DynamicInputImpl(params, Empty.<Class<?>, InputArgParser<?>>hashMap());
+		assertEquals(Integer.valueOf(5), input.getInput("n", Integer.TYPE));
+		assertEquals(Integer.valueOf(0), input.getInput("missing", Integer.TYPE));
+		assertEquals(Double.valueOf(0), input.getInput("missing", Double.TYPE));
+		assertEquals(Character.valueOf('\0'), input.getInput("missing", Character.TYPE));
+		assertEquals(Boolean.FALSE, input.getInput("missing", Boolean.TYPE));
+		assertNull(input.getInput("missing", Integer.class));
+		assertNull(input.getInput("missing", String.class));
+	}
+
+}
@@ -18,6 +18,7 @@ package com.medallia.spider.api;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
@@ -28,6 +29,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,6 +53,8 @@ import com.medallia.tiny.CollUtils;
 import com.medallia.tiny.Empty;
 import com.medallia.tiny.Implement;
 import com.medallia.tiny.ObjectProvider;
+import com.medallia.tiny.ObjectProvider.ArgsPlan;
+import com.medallia.tiny.string.HtmlEscaper;
 import com.medallia.tiny.string.HtmlString;
 import com.medallia.tiny.string.JsString;
 import com.medallia.tiny.string.StringTemplateBuilder.SimpleAttributeRenderer;
@@ -66,6 +71,10 @@ import com.medallia.tiny.string.StringTemplateBuilder.SimpleAttributeRenderer;
  * {@link StRenderPostAction} by rendering the template. The caller can check
  * whether the returned object is an instance of that interface and if so
  * retrieve the rendered content.
+ * <p>
+ * 
+ * The action method may also return a Future of the PostAction, in which
+ * case an {@link AsyncPostAction} is returned.
  * 
  */
 public abstract class StRenderer {
@@ -74,7 +83,7 @@ public abstract class StRenderer {
 	
 	/**
 	 * @param stringTemplateFactory object returned from {@link #makeStringTemplateFactory(StringTemplateErrorListener, StToolProvider)}
-	 * @param debugMode true if debug mode is on; the template source is then re-read from disk every time
+	 * @param renderable the object to render; may be null if the renderer is only used for {@link #loadTemplate(Class)}
 	 */
 	public StRenderer(StringTemplateFactory stringTemplateFactory, StRenderable renderable) {
 		this.stringTemplateFactory = stringTemplateFactory;
@@ -92,6 +101,23 @@ public abstract class StRenderer {
 		String getStContent();
 	}
 	
+	/**
+	 * {@link StRenderPostAction} where the template has not yet been rendered; see
+	 * {@link StRenderer#actionAndDeferRender(ObjectProvider, LifecycleHandlerSet, Map)}.
+	 * The template can be written directly to the output, which avoids holding the
+	 * rendered content in memory. Each method renders the template again.
+	 */
+	public interface StStreamPostAction extends StRenderPostAction {
+		/**
+		 * Render the template to the given writer.
+		 * 
+		 * @return the number of characters written
+		 * @throws MissingAttributesException if the template referenced any attributes not set by
+		 * the action method; note that the content rendered so far has then been written
+		 */
+		int write(StringTemplateWriter out) throws IOException;
+	}
+	
 	/** Call {@link #render(String)} and wrap the return value in a {@link StRenderPostAction} */
 	protected StRenderPostAction stRenderPostAction(String templateName) {
 		final String stContent = render(templateName);
@@ -102,19 +128,69 @@ public abstract class StRenderer {
 		};
 	}
 	
+	/** @return a {@link StStreamPostAction} for the given template */
+	protected StStreamPostAction stStreamPostAction(final String templateName) {
+		return new StStreamPostAction() {
+			@Implement public String getStContent() {
+				return render(templateName);
+			}
+			@Implement public int write(StringTemplateWriter out) throws IOException {
+				return StRenderer.this.write(getStInstance(templateName), out);
+			}
+		};
+	}
+	
 	/**
 	 * Call the action method of the {@link StRenderable}, render the template if applicable and return the result.
 	 * 
 	 * @param injector dependency injector with the objects available for injection
 	 * @param inputParams the request parameters
-	 * @return result of the action and render
+	 * @return result of the action and render; an {@link AsyncPostAction} if the action method returned a Future
 	 * @throws MissingAttributesException if the template referenced any attributes not set by the action method
 	 */
 	public PostAction actionAndRender(ObjectProvider injector, LifecycleHandlerSet hs, Map<String, String[]> inputParams) throws MissingAttributesException {
 		PostAction pa = invokeAction(injector, hs, inputParams);
+		if (pa instanceof FuturePostAction) {
+			return new FuturePostAction(((FuturePostAction) pa).future) {
+				@Override PostAction map(PostAction result) {
+					return renderResult(result);
+				}
+			};
+		}
+		return renderResult(pa);
+	}
+	
+	private PostAction renderResult(PostAction pa) {
 		return pa == null ? defaultPostAction() : render(pa);
 	}
 	
+	/**
+	 * Same as {@link #actionAndRender(ObjectProvider, LifecycleHandlerSet, Map)}, except that
+	 * the template is not rendered; a {@link StStreamPostAction} is returned instead of a
+	 * {@link StRenderPostAction}, which the caller can use to write the template directly
+	 * to the output.
+	 */
+	public PostAction actionAndDeferRender(ObjectProvider injector, LifecycleHandlerSet hs, Map<String, String[]> inputParams) {
+		PostAction pa = invokeAction(injector, hs, inputParams);
+		if (pa instanceof FuturePostAction) {
+			return new FuturePostAction(((FuturePostAction) pa).future) {
+				@Override PostAction map(PostAction result) {
+					return deferRenderResult(result);
+				}
+			};
+		}
+		return deferRenderResult(pa);
+	}
+	
+	private PostAction deferRenderResult(PostAction pa) {
+		if (pa == null)
+			return stStreamPostAction(getTemplateNameFromClass(renderable.getClassForTemplateName()));
+		else if (pa instanceof StTemplatePostAction)
+			return stStreamPostAction(((StTemplatePostAction)pa).templateName());
+		else
+			return pa;
+	}
+	
 	private PostAction render(PostAction pa) {
 		if (pa instanceof StTemplatePostAction) {
 			return stRenderPostAction(((StTemplatePostAction)pa).templateName());
@@ -123,12 +199,22 @@ public abstract class StRenderer {
 		}
 	}
 
+	/** An action method along with the plan for its arguments */
+	private static class ActionMethod {
+		private final Method method;
+		private final ArgsPlan plan;
+		ActionMethod(Method method) {
+			this.method = method;
+			this.plan = ObjectProvider.argsPlanFor(method);
+		}
+	}
+	
 	/** map from the class to the action method of that class; stored for performance reasons */
-	private static final ConcurrentMap<Class<?>, Method> ACTION_METHOD_MAP = Empty.concurrentMap();
+	private static final ConcurrentMap<Class<?>, ActionMethod> ACTION_METHOD_MAP = Empty.concurrentMap();
 	
 	/** @return the action method of the given class; throws AssertionError if no such method exists */
-	private static Method findActionMethod(Class<?> clazz) {
-		Method am = ACTION_METHOD_MAP.get(clazz);
+	private static ActionMethod findActionMethod(Class<?> clazz) {
+		ActionMethod am = ACTION_METHOD_MAP.get(clazz);
 		if (am != null)
 			return am;
 		
@@ -137,8 +223,9 @@ public abstract class StRenderer {
 				int modifiers = m.getModifiers();
 				if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers)) continue;
 				m.setAccessible(true);
-				ACTION_METHOD_MAP.put(clazz, m);
-				return m;
+				am = new ActionMethod(m);
+				ActionMethod prev = ACTION_METHOD_MAP.putIfAbsent(clazz, am);
+				return prev != null ? prev : am;
 			}
 		}
 		throw new AssertionError("No action method found in " + clazz);
@@ -165,6 +252,11 @@ public abstract class StRenderer {
 		return x;
 	}
 	
+	/** @return the interface annotated with {@link Input} declared within the given class, or null if there is none */
+	public static Class<?> findInputInterface(Class<?> clazz) {
+		return findInterfaceWithAnnotation(INPUT_ANNOTATION_MAP, clazz, Input.class);
+	}
+	
 	/**
 	 * Call the action method of the {@link StRenderable} and return the post action that needs to be rendered
 	 * 
@@ -177,13 +269,60 @@ public abstract class StRenderer {
 		DynamicInputImpl dynamicInput = new DynamicInputImpl(inputParams, inputArgParsers);
 		injector = injector.copyWith(dynamicInput).errorOnUnknownType();
 		
-		Method am = findActionMethod(renderable.getClass());
+		ActionMethod am = findActionMethod(renderable.getClass());
 		Class<Input> inputInterface = findInterfaceWithAnnotation(INPUT_ANNOTATION_MAP, renderable.getClass(), Input.class);
 		if (inputInterface != null) {
 			injector.register(createInput(inputInterface, dynamicInput));
 		}
 		
-		return (PostAction) new MethodInvoker(injector, hs).invoke(am, renderable);
+		Object result = new MethodInvoker(injector, hs).invoke(am.method, am.plan, renderable);
+		if (result instanceof Future)
+			return new FuturePostAction((Future<?>) result);
+		return (PostAction) result;
+	}
+	
+	/**
+	 * PostAction returned when the action method returns a Future of the PostAction instead
+	 * of the PostAction itself, which allows the caller to release the thread until the
+	 * Future is done. Note that the objects injected into the action method are released
+	 * (see {@link LifecycleHandlerSet}) when the action method returns, so they must not be
+	 * used to compute the result.
+	 */
+	public interface AsyncPostAction extends PostAction {
+		/** @return the Future returned by the action method */
+		Future<?> getFuture();
+		/**
+		 * @return the PostAction the Future completed with, handled the same way as the return value
+		 * of the action method is handled by the method that returned this object
+		 * @throws ExecutionException if the Future failed
+		 * @throws IllegalStateException if the Future is not done
+		 */
+		PostAction getResult() throws ExecutionException;
+	}
+	
+	/** AsyncPostAction for the Future returned by the action method */
+	private static class FuturePostAction implements AsyncPostAction {
+		private final Future<?> future;
+		FuturePostAction(Future<?> future) {
+			this.future = future;
+		}
+		@Implement public Future<?> getFuture() {
+			return future;
+		}
+		@Implement public PostAction getResult() throws ExecutionException {
+			if (!future.isDone())
+				throw new IllegalStateException("The result of the action is not available yet");
+			try {
+				return map((PostAction) future.get());
+			} catch (InterruptedException e) {
+				// does not happen since the Future is done
+				throw new AssertionError(e);
+			}
+		}
+		/** @return the PostAction to return for the given result of the Future */
+		PostAction map(PostAction result) {
+			return result;
+		}
 	}
 	
 	/** object that can parse a request parameter argument into a proper type */
@@ -194,17 +333,73 @@ public abstract class StRenderer {
 	
 	private final Map<Class<?>, InputArgParser<?>> inputArgParsers = Empty.hashMap();
 
-	private Object createInput(Class<?> x, final DynamicInputImpl dynamicInput) {
-		return Proxy.newProxyInstance(x.getClassLoader(), new Class<?>[] { x }, 
-			new InvocationHandler() {
-				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-					return dynamicInput.getInput(method.getName(), method.getReturnType(), method);
+	private Object createInput(Class<?> x, DynamicInputImpl dynamicInput) {
+		return findInputBinder(x).bind(dynamicInput);
+	}
+	
+	/**
+	 * The proxy constructor and the parsing information for the methods of an
+	 * {@link Input} interface, computed once per interface. The values are parsed
+	 * the first time each method is called and then remembered for the request.
+	 */
+	private static class InputBinder {
+		private final Constructor<?> proxyConstructor;
+		/** map from each method in the interface to its index in specs */
+		private final Map<Method, Integer> methodIndex = Empty.hashMap();
+		private final DynamicInputImpl.InputSpec[] specs;
+		InputBinder(Class<?> x) {
+			try {
+				proxyConstructor = Proxy.getProxyClass(x.getClassLoader(), new Class<?>[] { x }).getConstructor(InvocationHandler.class);
+			} catch (NoSuchMethodException e) {
+				throw new AssertionError(e);
+			}
+			// the proxy class is not public if the interface is not
+			proxyConstructor.setAccessible(true);
+			Method[] methods = x.getMethods();
+			specs = new DynamicInputImpl.InputSpec[methods.length];
+			for (int i = 0; i < methods.length; i++) {
+				Method m = methods[i];
+				methodIndex.put(m, i);
+				specs[i] = new DynamicInputImpl.InputSpec(m.getName(), m.getReturnType(), m);
+			}
+		}
+		Object bind(final DynamicInputImpl dynamicInput) {
+			final Object[] values = new Object[specs.length];
+			final boolean[] parsed = new boolean[specs.length];
+			InvocationHandler h = new InvocationHandler() {
+				@Implement public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					Integer idx = methodIndex.get(method);
+					if (idx == null)
+						return dynamicInput.getInput(method.getName(), method.getReturnType(), method);
+					int i = idx;
+					if (!parsed[i]) {
+						values[i] = dynamicInput.getInput(specs[i]);
+						parsed[i] = true;
+					}
+					return values[i];
 				}
+			};
+			try {
+				return proxyConstructor.newInstance(h);
+			} catch (Exception e) {
+				throw new RuntimeException("Failed to create proxy for " + proxyConstructor.getDeclaringClass(), e);
 			}
-		);
+		}
+	}
+	
+	/** map from an {@link Input} interface to its binder; stored for performance reasons */
+	private static final ConcurrentMap<Class<?>, InputBinder> INPUT_BINDER_MAP = Empty.concurrentMap();
+	
+	private static InputBinder findInputBinder(Class<?> x) {
+		InputBinder b = INPUT_BINDER_MAP.get(x);
+		if (b == null) {
+			b = new InputBinder(x);
+			INPUT_BINDER_MAP.put(x, b);
+		}
+		return b;
 	}
 	
-	/** register the given {@link InputArgParser} */
+	/** register the given {@link InputArgParser}; it takes precedence over any built-in parser for the type */
 	public <X> void registerArgParser(Class<X> type, InputArgParser<X> parser) {
 		inputArgParsers.put(type, parser);
 	}
@@ -272,9 +467,12 @@ public abstract class StRenderer {
 	private static final ThreadLocal<StTemplatePath> ST_TEMPLATE_PATH_TL = new ThreadLocal<StTemplatePath>();
 	
 	private void setStTemplatePathTl() {
+		setStTemplatePathTl(renderable.getClassForTemplateName());
+	}
+	private void setStTemplatePathTl(final Class<?> c) {
 		ST_TEMPLATE_PATH_TL.set(new StTemplatePath() {
 			@Implement public String findPathForTemplate(String name) {
-				return StRenderer.this.findPathForTemplate(renderable.getClassForTemplateName(), name);
+				return StRenderer.this.findPathForTemplate(c, name);
 			}
 		});
 	}
@@ -284,9 +482,82 @@ public abstract class StRenderer {
 	
 	/** @return the result of rendering the given StringTemplate in the context set up by this class */
 	public String render(StringTemplate st) throws MissingAttributesException {
+		StMissingAttrs ctx = setOutputAttributes(st);
+
+		ST_MISSING_ATTRS_TL.set(ctx);
+		setStTemplatePathTl();
+		try {
+			String stContent = renderFinal(st);
+			if (!ctx.missingAttrs.isEmpty()) throw new MissingAttributesException(ctx.missingAttrs, st);
+			
+			return stContent;
+		} finally {
+			releaseStTemplatePathTl();
+			ST_MISSING_ATTRS_TL.remove();
+		}
+	}
+	
+	/**
+	 * Same as {@link #render(StringTemplate)}, but the result is written to the given writer.
+	 * 
+	 * @return the number of characters written
+	 */
+	public int write(StringTemplate st, StringTemplateWriter out) throws IOException, MissingAttributesException {
+		StMissingAttrs ctx = setOutputAttributes(st);
+
+		ST_MISSING_ATTRS_TL.set(ctx);
+		setStTemplatePathTl();
+		try {
+			int n = writeFinal(st, out);
+			if (!ctx.missingAttrs.isEmpty()) throw new MissingAttributesException(ctx.missingAttrs, st);
+			
+			return n;
+		} finally {
+			releaseStTemplatePathTl();
+			ST_MISSING_ATTRS_TL.remove();
+		}
+	}
+	
+	/**
+	 * Set the attributes declared in the {@link Output} interface on the given template
+	 * 
+	 * @return the object used to track missing attributes while rendering the template
+	 */
+	private StMissingAttrs setOutputAttributes(StringTemplate st) {
 		StMissingAttrs ctx = new StMissingAttrs();
 		
-		Class<Output> outputInterface = findInterfaceWithAnnotation(OUTPUT_ANNOTATION_MAP, renderable.getClass(), Output.class);
+		for (OutputBinding b : findOutputBindings(renderable.getClass())) {
+			Object obj = renderable.getAttr(b.tag);
+			if (obj != null) {
+				st.setAttribute(b.attrName, obj);
+			} else if (renderable.hasAttr(b.tag)) {
+				ctx.nullAttrs.add(b.attrName);
+			}
+		}
+		return ctx;
+	}
+	
+	/** A TypeTag declared in the {@link Output} interface and the name of the template attribute it sets */
+	private static class OutputBinding {
+		private final V<?> tag;
+		private final String attrName;
+		OutputBinding(V<?> tag, String attrName) {
+			this.tag = tag;
+			this.attrName = attrName;
+		}
+	}
+	
+	/** map from the class to the TypeTags declared in its {@link Output} interface; stored for performance reasons */
+	private static final ConcurrentMap<Class<?>, OutputBinding[]> OUTPUT_BINDINGS_MAP = Empty.concurrentMap();
+	
+	/** @return the TypeTags declared in the {@link Output} interface of the given class; empty if it has no such interface */
+	private static OutputBinding[] findOutputBindings(Class<?> clazz) {
+		OutputBinding[] bindings = OUTPUT_BINDINGS_MAP.get(clazz);
+		if (bindings != null)
+			return bindings;
+		
+		List<OutputBinding> l = Empty.list();
+		Class<Output> outputInterface = findInterfaceWithAnnotation(OUTPUT_ANNOTATION_MAP, clazz, Output.class);
 		if (outputInterface != null) {
 			for (Field f : outputInterface.getDeclaredFields()) {
 				f.setAccessible(true);
@@ -296,27 +567,12 @@ public abstract class StRenderer {
 				} catch (Exception e) {
 					throw new RuntimeException("For " + f, e);
 				}
-				String fname = f.getName().toLowerCase();
-				Object obj = renderable.getAttr(tag);
-				if (obj != null) {
-					st.setAttribute(fname, obj);
-				} else if (renderable.hasAttr(tag)) {
-					ctx.nullAttrs.add(fname);
-				}
+				l.add(new OutputBinding(tag, f.getName().toLowerCase()));
 			}
 		}
-
-		ST_MISSING_ATTRS_TL.set(ctx);
-		setStTemplatePathTl();
-		try {
-			String stContent = renderFinal(st);
-			if (!ctx.missingAttrs.isEmpty()) throw new MissingAttributesException(ctx.missingAttrs, st);
-			
-			return stContent;
-		} finally {
-			releaseStTemplatePathTl();
-			ST_MISSING_ATTRS_TL.remove();
-		}
+		bindings = l.toArray(new OutputBinding[l.size()]);
+		OUTPUT_BINDINGS_MAP.put(clazz, bindings);
+		return bindings;
 	}
 
 	/**
@@ -333,11 +589,38 @@ public abstract class StRenderer {
 		}
 	}
 
+	/**
+	 * Load the default template of the given class, i.e. read and parse the source, so that
+	 * this is not done when the template is first rendered. Templates included from this
+	 * template are loaded when it is rendered.
+	 * 
+	 * @return false if there is no template for the given class
+	 * @throws RuntimeException if the template cannot be parsed
+	 */
+	public boolean loadTemplate(Class<?> c) {
+		String templateName = getTemplateNameFromClass(c);
+		if (lookupPathForTemplate(c, templateName) == null)
+			return false;
+		
+		setStTemplatePathTl(c);
+		try {
+			stringTemplateFactory.getStInstance(templateName);
+		} finally {
+			releaseStTemplatePathTl();
+		}
+		return true;
+	}
+
 	/** actual perform the rendering of the given StringTemplate by calling {@link StringTemplate#toString()} */
 	protected String renderFinal(StringTemplate st) {
 		return st.toString();
 	}
 	
+	/** actual perform the rendering of the given StringTemplate to the given writer by calling {@link StringTemplate#write(StringTemplateWriter)} */
+	protected int writeFinal(StringTemplate st, StringTemplateWriter out) throws IOException {
+		return st.write(out);
+	}
+	
 	/** @return the relative path to the .st files; by default this is a package called "pages" */
 	protected String getPageRelativePath() {
 		return "pages/";
@@ -345,14 +628,14 @@ public abstract class StRenderer {
 
 	/** @return the path to the .st file of the given name, relative to the package of the given class */
 	protected String findPathForTemplate(Class<?> c, String name) {
-		name = getPageRelativePath() + name;
-		String path = name + ".st";
-		while (c != null) {
-			if (c.getResource(path) != null)
-				return c.getPackage().getName().replace('.', '/') + "/" + name;
-			c = c.getSuperclass();
-		}
-		throw new RuntimeException("Cannot find template " + name);
+		String path = lookupPathForTemplate(c, name);
+		if (path == null) throw new RuntimeException("Cannot find template " + getPageRelativePath() + name);
+		return path;
+	}
+	
+	/** @return the path to the .st file of the given name, relative to the package of the given class, or null if there is no such file */
+	private String lookupPathForTemplate(Class<?> c, String name) {
+		return stringTemplateFactory.getTemplatePathCache().findPath(c, getPageRelativePath() + name);
 	}
 
 	/**
@@ -373,6 +656,9 @@ public abstract class StRenderer {
 		
 		/** See {@link StringTemplateFactory#setRefreshInterval(int)} */
 		void setRefreshInterval(int seconds);
+		
+		/** @return the cache of the paths to the template files loaded by this factory */
+		TemplatePathCache getTemplatePathCache();
 	}
 
 	/** Object that provides instances of {@link StTool} */
@@ -421,6 +707,7 @@ public abstract class StRenderer {
 		};
 		stGroup.setErrorListener(errorListener);
 		registerWebRenderers(stGroup);
+		final TemplatePathCache templatePathCache = new TemplatePathCache(null);
 		
 		return new StringTemplateFactory() {
 			@Implement public StringTemplate getStInstance(String templateName) {
@@ -435,6 +722,9 @@ public abstract class StRenderer {
 			@Implement public void setRefreshInterval(int seconds) {
 				stGroup.setRefreshInterval(seconds);
 			}
+			@Implement public TemplatePathCache getTemplatePathCache() {
+				return templatePathCache;
+			}
 		};
 	}
 	
@@ -444,7 +734,8 @@ public abstract class StRenderer {
 	 *   o HtmlString
 	 *   o JsString
 	 *   
-	 * All plain String objects are escaped with {@link StringEscapeUtils#escapeHtml(String)}.
+	 * All plain String objects are escaped with {@link HtmlEscaper#HTML40}, which gives the same
+	 * result as {@link StringEscapeUtils#escapeHtml(String)}.
 	 * 
 	 * @param stGroup the object to register the renderers on
 	 */
@@ -453,7 +744,7 @@ public abstract class StRenderer {
 		stGroup.registerRenderer(JsString.class, JsString.ST_RENDERER);
 		stGroup.registerRenderer(String.class, new SimpleAttributeRenderer() {
 			public String toString(Object o) {
-				return StringEscapeUtils.escapeHtml(String.valueOf(o));
+				return HtmlEscaper.HTML40.escape(String.valueOf(o));
 			}
 		});
 	}
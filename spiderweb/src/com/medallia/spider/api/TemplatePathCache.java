@@ -0,0 +1,134 @@
+/*
+ * This file is part of the Spider Web Framework.
+ *
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.medallia.tiny.Empty;
+
+/**
+ * Cache of the paths to .st files, which are found by looking in the package of
+ * a class and then in the packages of its superclasses. Names that are not found
+ * are cached as well.
+ * <p>
+ *
+ * In validating mode, which is meant for debug mode, each entry remembers which
+ * candidate files on disk existed when it was created, and the entry is discarded
+ * if one of them has since been added or removed. Templates in jar files are assumed
+ * not to change.
+ */
+public class TemplatePathCache {
+
+	/** The result of looking up a name */
+	private static class Entry {
+		/** the path found, or null if the template does not exist */
+		private final String path;
+		/** map from candidate file to whether it existed; null if not validating */
+		private final Map<File, Boolean> files;
+		Entry(String path, Map<File, Boolean> files) {
+			this.path = path;
+			this.files = files;
+		}
+		boolean isValid() {
+			if (files != null) {
+				for (Map.Entry<File, Boolean> me : files.entrySet()) {
+					if (me.getKey().exists() != me.getValue().booleanValue())
+						return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private final Class<?> lastClass;
+
+	/** map from class to the entries for the names looked up from that class */
+	private final ConcurrentMap<Class<?>, ConcurrentMap<String, Entry>> entries = Empty.concurrentMap();
+
+	private volatile boolean validating;
+
+	/** @param lastClass the last superclass searched, or null to search all of them */
+	public TemplatePathCache(Class<?> lastClass) {
+		this.lastClass = lastClass;
+	}
+
+	/** Turn validating mode on or off; this clears the cache */
+	public void setValidating(boolean validating) {
+		this.validating = validating;
+		entries.clear();
+	}
+
+	/**
+	 * @param name name of the template, relative to the package of the class and without the .st extension
+	 * @return the path of the template (without the .st extension), or null if it was not found
+	 */
+	public String findPath(Class<?> c, String name) {
+		ConcurrentMap<String, Entry> m = entries.get(c);
+		if (m == null) {
+			ConcurrentMap<String, Entry> old = entries.putIfAbsent(c, m = Empty.<String, Entry>concurrentMap());
+			if (old != null) m = old;
+		}
+		Entry e = m.get(name);
+		if (e == null || !e.isValid()) {
+			e = resolve(c, name);
+			m.put(name, e);
+		}
+		return e.path;
+	}
+
+	private Entry resolve(Class<?> c, String name) {
+		String path = name + ".st";
+		Map<File, Boolean> files = validating ? Empty.<File, Boolean>hashMap() : null;
+		while (c != null) {
+			if (files != null)
+				addCandidateFiles(files, c, path);
+			if (c.getResource(path) != null)
+				return new Entry(c.getPackage().getName().replace('.', '/') + "/" + name, files);
+
+			if (c == lastClass)
+				break;
+
+			c = c.getSuperclass();
+		}
+		return new Entry(null, files);
+	}
+
+	/** add the files the given path (relative to the package of the given class) could be loaded from */
+	private static void addCandidateFiles(Map<File, Boolean> files, Class<?> c, String path) {
+		ClassLoader cl = c.getClassLoader();
+		if (cl == null) return;
+		try {
+			Enumeration<URL> urls = cl.getResources(c.getPackage().getName().replace('.', '/'));
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				if ("file".equals(url.getProtocol())) {
+					File f = new File(URLDecoder.decode(url.getPath(), "utf-8"), path);
+					files.put(f, f.exists());
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to list the resources of " + c.getPackage(), e);
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.metrics;
+
+/** The values recorded for each request; see {@link MetricsRegistry} */
+public enum Metric {
+	/** mapping the URI to the task constructor */
+	ROUTE_LOOKUP(Unit.NANOSECONDS),
+	/** building the ObjectProvider with the objects registered for the request */
+	INJECTOR(Unit.NANOSECONDS),
+	/** invoking the constructor of the task */
+	CONSTRUCTOR(Unit.NANOSECONDS),
+	/** invoking the action method of the task */
+	ACTION(Unit.NANOSECONDS),
+	/** rendering the template of the task; for the requested task this is writing the page template, which is part of PAGE */
+	RENDER(Unit.NANOSECONDS),
+	/** rendering all the embedded tasks the task depends on */
+	EMBEDDED(Unit.NANOSECONDS),
+	/** writing the response, including the page template and the template of the task */
+	PAGE(Unit.NANOSECONDS),
+	/** serving a static resource */
+	STATIC(Unit.NANOSECONDS),
+	/** serving a response from the page cache, in which case no other metrics are recorded for the request */
+	CACHED_PAGE(Unit.NANOSECONDS),
+	/** waiting for and serving the response rendered for an identical request, in which case no other metrics are recorded for the request */
+	COALESCED_PAGE(Unit.NANOSECONDS),
+	/** the whole request */
+	TOTAL(Unit.NANOSECONDS),
+	/** size of the rendered response before it is compressed */
+	BYTES_WRITTEN(Unit.BYTES),
+	;
+	
+	/** The unit of the values of a metric */
+	public enum Unit { NANOSECONDS, BYTES }
+	
+	private final Unit unit;
+	private Metric(Unit unit) {
+		this.unit = unit;
+	}
+	
+	/** @return the unit of the values of this metric */
+	public Unit getUnit() {
+		return unit;
+	}
+}
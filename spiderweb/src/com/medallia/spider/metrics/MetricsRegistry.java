@@ -0,0 +1,104 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.metrics;
+
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.Histogram;
+import com.medallia.tiny.Implement;
+
+/**
+ * {@link MetricsReporter} that keeps a {@link Histogram} of the values of each
+ * {@link Metric} for each task. The histograms are created the first time a
+ * value is recorded for them.
+ */
+public class MetricsRegistry implements MetricsReporter {
+	
+	/** name the metrics for static resources are recorded under */
+	public static final String STATIC_RESOURCES = "[static]";
+	
+	private static final Metric[] METRICS = Metric.values();
+	
+	/** map from name to the histograms for it, indexed by the ordinal of the metric */
+	private final ConcurrentMap<String, AtomicReferenceArray<Histogram>> histograms = Empty.concurrentMap();
+	
+	@Implement public void report(String name, Metric metric, long value) {
+		getOrCreate(name, metric).record(value);
+	}
+	
+	private Histogram getOrCreate(String name, Metric metric) {
+		AtomicReferenceArray<Histogram> a = histograms.get(name);
+		if (a == null) {
+			AtomicReferenceArray<Histogram> old = histograms.putIfAbsent(name, a = new AtomicReferenceArray<Histogram>(METRICS.length));
+			if (old != null) a = old;
+		}
+		Histogram h = a.get(metric.ordinal());
+		if (h == null) {
+			a.compareAndSet(metric.ordinal(), null, new Histogram());
+			h = a.get(metric.ordinal());
+		}
+		return h;
+	}
+	
+	/** @return the names values have been recorded for, sorted */
+	public List<String> getNames() {
+		List<String> l = Empty.list(histograms.keySet());
+		Collections.sort(l);
+		return l;
+	}
+	
+	/** @return the histogram for the given name and metric, or null if no values have been recorded for it */
+	public Histogram getHistogram(String name, Metric metric) {
+		AtomicReferenceArray<Histogram> a = histograms.get(name);
+		return a == null ? null : a.get(metric.ordinal());
+	}
+	
+	/** Remove all the recorded values */
+	public void clear() {
+		histograms.clear();
+	}
+	
+	/** Write a plain text table with the statistics of each histogram; times are in milliseconds */
+	public void writeReport(PrintWriter w) {
+		w.println(String.format("%-50s %-14s %10s %12s %12s %12s %12s %12s", "name", "metric", "count", "mean", "p50", "p90", "p99", "max"));
+		for (String name : getNames()) {
+			for (Metric m : METRICS) {
+				Histogram h = getHistogram(name, m);
+				if (h == null) continue;
+				w.println(String.format("%-50s %-14s %10d %12s %12s %12s %12s %12s", name, m, h.getCount(),
+						format(m, h.getMean()), format(m, h.getValueAtPercentile(50)), format(m, h.getValueAtPercentile(90)),
+						format(m, h.getValueAtPercentile(99)), format(m, h.getMax())));
+			}
+		}
+		w.flush();
+	}
+	
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private static String format(Metric m, double v) {
+		if (m.getUnit() == Metric.Unit.NANOSECONDS)
+			return String.format("%.3f", v / NANOS_PER_MILLI);
+		return String.format("%.0f", v);
+	}
+
+}
@@ -0,0 +1,31 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.metrics;
+
+/**
+ * Receiver of the values recorded for each request, e.g. to forward them to a
+ * monitoring system. It is called on the thread handling the request (or rendering
+ * an embedded task), so it must be thread safe and should not block.
+ */
+public interface MetricsReporter {
+	/**
+	 * @param name the name of the task the value is for, or {@link MetricsRegistry#STATIC_RESOURCES}
+	 * @param metric the metric the value is for
+	 * @param value in the unit of the metric
+	 */
+	void report(String name, Metric metric, long value);
+}
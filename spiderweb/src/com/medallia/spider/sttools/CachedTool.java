@@ -16,51 +16,63 @@
  */
 package com.medallia.spider.sttools;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
 
 import org.antlr.stringtemplate.StringTemplate;
 
 import com.medallia.spider.StaticResources.StaticResource;
 import com.medallia.spider.StaticResources.StaticResourceLookup;
-import com.medallia.tiny.Encoding;
+import com.medallia.tiny.Empty;
 import com.medallia.tiny.Implement;
 
 
 /**
- * Tool that is supposed to add a hash to a link to a static resource
+ * Tool that adds a hash of the content to a link to a static resource
  * to handle browser cache invalidation.
  * <p>
  * 
- * Note: not yet implemented, simply returns the link unmodified.
+ * The link for each resource is computed the first time it is rendered
+ * and then reused; see {@link #setMemoize(boolean)}.
  *
  */
 public class CachedTool implements StTool {
 	
 	private final StaticResourceLookup srl;
 	
+	/** map from resource name to the link created for it */
+	private final ConcurrentMap<String, String> links = Empty.concurrentMap();
+	private volatile boolean memoize = true;
+	
 	public CachedTool(StaticResourceLookup srl) {
 		this.srl = srl;
 	}
+	
+	/**
+	 * Turn memoization of the links on or off; when off the resource is hashed each time
+	 * it is rendered, so changes to it are seen (e.g. in debug mode). This clears the links
+	 * memoized so far.
+	 */
+	public void setMemoize(boolean memoize) {
+		this.memoize = memoize;
+		links.clear();
+	}
 
 	@Implement public String render(StringTemplate st) {
 		String resourceName = String.valueOf(st.getAttribute("it"));
+		String link = links.get(resourceName);
+		if (link == null) {
+			link = makeLink(resourceName);
+			if (memoize)
+				links.put(resourceName, link);
+		}
+		return link;
+	}
+	
+	private String makeLink(String resourceName) {
 		StaticResource sr = srl.findStaticResource(resourceName);
 		
-		if (sr != null) {
-			// copy into buffer and calculate md5
-			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-			try {
-				sr.copyTo(buffer);
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-			
-			// create and return link
-			String md5 = Encoding.md5(buffer.toByteArray());
-			
-			return resourceName + "?" + md5;
-		}
+		if (sr != null && sr.exists())
+			return resourceName + "?" + sr.getContentHash();
 		
 		throw new RuntimeException("Resource not found: " + resourceName);
 	}
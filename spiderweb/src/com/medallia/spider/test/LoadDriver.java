@@ -0,0 +1,265 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import com.medallia.spider.IRenderTask;
+import com.medallia.spider.Task;
+import com.medallia.spider.test.StRenderTestCase.ServletMock;
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.Implement;
+
+/**
+ * Sends a weighted mix of requests from several threads to a {@link Target} for a
+ * fixed time and collects the throughput, latency and allocation of each kind of
+ * request in a {@link LoadReport}. The target is either a {@link ServletMock}, which
+ * runs the servlet in-process, or a web server such as the one started by
+ * {@link com.medallia.tiny.web.JettyWebRunner}.
+ * <p>
+ * 
+ * Example:
+ * <pre>
+ *   LoadReport r = new LoadDriver(LoadDriver.inProcess(makeServletMock(MyServlet.class)))
+ *       .add(FooTask.class, params, 3)
+ *       .add(BarTask.class, Collections.&lt;String, String&gt;emptyMap(), 1)
+ *       .threads(8).duration(10000)
+ *       .run();
+ *   r.assertNoErrors();
+ *   r.assertThroughputAtLeast("FooTask", 500);
+ * </pre>
+ */
+public class LoadDriver {
+	
+	/** Something requests can be sent to */
+	public interface Target {
+		/** send a GET request for the given URI; an exception is counted as an error */
+		void request(String uri, Map<String, String> params) throws Exception;
+		/** @return true if the requests are handled on the thread calling {@link #request(String, Map)}, so its allocation can be measured */
+		boolean isInProcess();
+	}
+	
+	/** @return a Target that calls the given ServletMock with mock requests; a response with status 400 or above is counted as an error */
+	public static Target inProcess(final ServletMock servletMock) {
+		return new Target() {
+			@Implement public void request(String uri, Map<String, String> params) throws Exception {
+				int status = StRenderTestCase.service(servletMock, uri, params, null).getStatus();
+				if (status >= 400)
+					throw new IOException("Status " + status + " for " + uri);
+			}
+			@Implement public boolean isInProcess() {
+				return true;
+			}
+		};
+	}
+	
+	/**
+	 * @return a Target that sends HTTP requests to the server with the given base URL, e.g. http://localhost:8080;
+	 * a response with status 400 or above is counted as an error
+	 */
+	public static Target http(final String baseUrl) {
+		return new Target() {
+			@Implement public void request(String uri, Map<String, String> params) throws Exception {
+				HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + uri + queryString(params)).openConnection();
+				// getInputStream throws for an error status, so the status is read first
+				int status = conn.getResponseCode();
+				InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+				if (in != null) {
+					try {
+						// read the whole body so the connection can be reused
+						byte[] b = new byte[8192];
+						while (in.read(b) >= 0) { }
+					} finally {
+						in.close();
+					}
+				}
+				if (status >= 400)
+					throw new IOException("Status " + status + " for " + uri);
+			}
+			@Implement public boolean isInProcess() {
+				return false;
+			}
+		};
+	}
+	
+	private static String queryString(Map<String, String> params) throws IOException {
+		if (params.isEmpty())
+			return "";
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> me : params.entrySet()) {
+			sb.append(sb.length() == 0 ? '?' : '&');
+			sb.append(URLEncoder.encode(me.getKey(), "utf-8")).append('=').append(URLEncoder.encode(me.getValue(), "utf-8"));
+		}
+		return sb.toString();
+	}
+	
+	/** A kind of request in the mix */
+	private static class Request {
+		private final String name;
+		private final String uri;
+		private final Map<String, String> params;
+		private final int weight;
+		Request(String name, String uri, Map<String, String> params, int weight) {
+			this.name = name;
+			this.uri = uri;
+			this.params = params;
+			this.weight = weight;
+		}
+	}
+	
+	private final Target target;
+	private final List<Request> mix = Empty.list();
+	private int threads = 4;
+	private long warmupMillis = 1000;
+	private long durationMillis = 5000;
+	
+	/** @param target the requests are sent here */
+	public LoadDriver(Target target) {
+		this.target = target;
+	}
+	
+	/**
+	 * Add a kind of request to the mix
+	 * @param name the results for the request are reported under this name
+	 * @param weight the relative frequency of the request
+	 */
+	public LoadDriver add(String name, String uri, Map<String, String> params, int weight) {
+		if (weight <= 0) throw new IllegalArgumentException("Weight must be positive: " + weight);
+		mix.add(new Request(name, uri, Collections.unmodifiableMap(params), weight));
+		return this;
+	}
+	
+	/** Add a request for the given task to the mix; the results are reported under the simple name of the class */
+	public LoadDriver add(Class<? extends IRenderTask> task, Map<String, String> params, int weight) {
+		return add(task.getSimpleName(), "/" + Task.uriNameForTask(task), params, weight);
+	}
+	
+	/** Set the number of threads sending requests; the default is 4 */
+	public LoadDriver threads(int n) {
+		this.threads = n;
+		return this;
+	}
+	
+	/** Set the number of milliseconds requests are sent before the measurements start; the default is 1000 */
+	public LoadDriver warmup(long millis) {
+		this.warmupMillis = millis;
+		return this;
+	}
+	
+	/** Set the number of milliseconds the measurements last; the default is 5000 */
+	public LoadDriver duration(long millis) {
+		this.durationMillis = millis;
+		return this;
+	}
+	
+	/** Send the requests and wait until the measurements are done */
+	public LoadReport run() throws InterruptedException {
+		if (mix.isEmpty()) throw new IllegalStateException("No requests added");
+		
+		final Request[] requests = mix.toArray(new Request[mix.size()]);
+		final int[] cumulativeWeights = new int[requests.length];
+		int total = 0;
+		for (int i = 0; i < requests.length; i++)
+			cumulativeWeights[i] = total += requests[i].weight;
+		final int totalWeight = total;
+		
+		final LoadReport report = new LoadReport(target.isInProcess() && allocatedBytes() >= 0);
+		for (Request r : requests)
+			report.add(r.name);
+		
+		long start = System.nanoTime();
+		final long measureStart = start + warmupMillis * 1000000;
+		final long end = measureStart + durationMillis * 1000000;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			// each thread has its own seed so the same mix is sent each time
+			final Random random = new Random(t);
+			Thread th = new Thread("LoadDriver-" + t) {
+				@Override public void run() {
+					try {
+						long now;
+						while ((now = System.nanoTime()) < end) {
+							int w = random.nextInt(totalWeight);
+							int i = 0;
+							while (cumulativeWeights[i] <= w)
+								i++;
+							send(requests[i], now >= measureStart ? report : null);
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+			th.setDaemon(true);
+			th.start();
+		}
+		done.await();
+		report.setElapsedNanos(System.nanoTime() - measureStart);
+		return report;
+	}
+	
+	/** send the given request and record the result in the given report unless it is null */
+	private void send(Request r, LoadReport report) {
+		boolean measureAllocation = report != null && report.isAllocationMeasured();
+		long allocated = measureAllocation ? allocatedBytes() : 0;
+		long nt = System.nanoTime();
+		Throwable error = null;
+		try {
+			target.request(r.uri, r.params);
+		} catch (Throwable t) {
+			error = t;
+		}
+		nt = System.nanoTime() - nt;
+		if (report != null)
+			report.record(r.name, nt, measureAllocation ? allocatedBytes() - allocated : 0, error);
+	}
+	
+	/** ThreadMXBean.getThreadAllocatedBytes(long) of the HotSpot JVM, or null if not available */
+	private static final Method ALLOCATED_BYTES_METHOD = findAllocatedBytesMethod();
+	private static Method findAllocatedBytesMethod() {
+		try {
+			return Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", Long.TYPE);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/** @return the number of bytes allocated by the current thread so far, or -1 if this cannot be measured */
+	private static long allocatedBytes() {
+		if (ALLOCATED_BYTES_METHOD == null)
+			return -1;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			return (Long) ALLOCATED_BYTES_METHOD.invoke(bean, Thread.currentThread().getId());
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+}
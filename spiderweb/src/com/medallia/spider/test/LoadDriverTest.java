@@ -0,0 +1,118 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.AssertionFailedError;
+
+import com.medallia.spider.SpiderServlet;
+import com.medallia.tiny.Implement;
+
+/** Tests for {@link LoadDriver} and {@link LoadReport} */
+public class LoadDriverTest extends RenderTaskTestCase {
+	
+	/** Servlet without any tasks or static resources */
+	@SuppressWarnings("serial")
+	public static class EmptyServlet extends SpiderServlet {
+		@Override protected String getDefaultURI() {
+			return "none";
+		}
+	}
+	/** Test subclass of the servlet, see {@link RenderTaskTestCase} */
+	@SuppressWarnings("serial")
+	public static class EmptyTestServlet extends EmptyServlet { }
+	
+	@Override protected ServletMock getServletMock() throws Exception {
+		return makeServletMock(EmptyTestServlet.class);
+	}
+	
+	private final AtomicInteger sent = new AtomicInteger();
+	
+	private final LoadDriver.Target target = new LoadDriver.Target() {
+		@Implement public void request(String uri, Map<String, String> params) throws Exception {
+			sent.incrementAndGet();
+			if (uri.equals("/fail"))
+				throw new IllegalStateException("failed");
+		}
+		@Implement public boolean isInProcess() {
+			return true;
+		}
+	};
+	
+	/** test that failed requests to a servlet are counted as errors */
+	public void testServletErrors() throws Exception {
+		Map<String, String> none = Collections.emptyMap();
+		LoadReport r = loadDriver()
+			// redirected to the default URI
+			.add("redirect", "/", none, 1)
+			// not found, which is reported with sendError
+			.add("missing", "/missing.css", none, 1)
+			// no task, which is reported by handleException with setStatus
+			.add("noTask", "/noSuch", none, 1)
+			.threads(2).warmup(50).duration(200)
+			.run();
+		
+		assertTrue(r.getCount("redirect") > 0);
+		assertEquals(0, r.getErrors("redirect"));
+		assertTrue(r.getErrors("missing") > 0);
+		assertEquals(r.getCount("missing"), r.getErrors("missing"));
+		assertTrue(r.getErrors("noTask") > 0);
+		assertEquals(r.getCount("noTask"), r.getErrors("noTask"));
+	}
+	
+	/** test that the requests are sent according to their weights and the failures are counted */
+	public void testMix() throws Exception {
+		Map<String, String> none = Collections.emptyMap();
+		final LoadReport r = new LoadDriver(target)
+			.add("a", "/a", none, 3)
+			.add("b", "/b", none, 1)
+			.add("fail", "/fail", none, 1)
+			.threads(2).warmup(50).duration(200)
+			.run();
+		
+		long a = r.getCount("a"), b = r.getCount("b"), f = r.getCount("fail");
+		assertTrue("a=" + a + " b=" + b, a > 2 * b && a < 4 * b);
+		// requests sent during the warm up are not counted
+		assertTrue(a + b + f < sent.get());
+		assertEquals(0, r.getErrors("a"));
+		assertEquals(f, r.getErrors("fail"));
+		assertTrue(r.getThroughput("a") > 0);
+		assertTrue(r.getLatencyMillis("a", 50) <= r.getLatencyMillis("a", 100));
+		
+		assertFails(new Runnable() {
+			@Implement public void run() { r.assertNoErrors(); }
+		});
+		r.assertThroughputAtLeast("a", 1);
+		assertFails(new Runnable() {
+			@Implement public void run() { r.assertThroughputAtLeast("a", 1e12); }
+		});
+	}
+	
+	private void assertFails(Runnable r) {
+		boolean failed = false;
+		try {
+			r.run();
+		} catch (AssertionFailedError e) {
+			failed = true;
+		}
+		assertTrue("Expected an assertion to fail", failed);
+	}
+
+}
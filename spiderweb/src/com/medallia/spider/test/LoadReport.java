@@ -0,0 +1,150 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import com.medallia.tiny.Empty;
+import com.medallia.tiny.Histogram;
+
+/**
+ * The results of a run of a {@link LoadDriver}. The assert methods can be used
+ * to fail a test case if the performance regresses.
+ */
+public class LoadReport {
+	
+	/** The results for one kind of request */
+	private static class Stats {
+		private final Histogram latency = new Histogram();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong allocatedBytes = new AtomicLong();
+		private final AtomicReference<Throwable> firstError = new AtomicReference<Throwable>();
+	}
+	
+	private final boolean allocationMeasured;
+	/** map from name to the results for it; populated before the requests are sent */
+	private final Map<String, Stats> stats = Empty.linkedHashMap();
+	private long elapsedNanos;
+	
+	LoadReport(boolean allocationMeasured) {
+		this.allocationMeasured = allocationMeasured;
+	}
+	
+	void add(String name) {
+		if (!stats.containsKey(name))
+			stats.put(name, new Stats());
+	}
+	
+	void record(String name, long nanos, long allocated, Throwable error) {
+		Stats s = stats.get(name);
+		s.latency.record(nanos);
+		s.allocatedBytes.addAndGet(allocated);
+		if (error != null) {
+			s.errors.incrementAndGet();
+			s.firstError.compareAndSet(null, error);
+		}
+	}
+	
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	/** @return true if the bytes allocated by the requests were measured */
+	public boolean isAllocationMeasured() {
+		return allocationMeasured;
+	}
+	
+	private Stats get(String name) {
+		Stats s = stats.get(name);
+		if (s == null) throw new IllegalArgumentException("No requests named " + name);
+		return s;
+	}
+	
+	/** @return the number of requests with the given name that were measured */
+	public long getCount(String name) {
+		return get(name).latency.getCount();
+	}
+	
+	/** @return the number of requests with the given name that failed */
+	public long getErrors(String name) {
+		return get(name).errors.get();
+	}
+	
+	/** @return the number of requests with the given name completed per second */
+	public double getThroughput(String name) {
+		return getCount(name) * 1e9 / elapsedNanos;
+	}
+	
+	/** @return the latency in milliseconds at the given percentile (0-100) of the requests with the given name */
+	public double getLatencyMillis(String name, double percentile) {
+		return (double) get(name).latency.getValueAtPercentile(percentile) / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+	
+	/** @return the mean number of bytes allocated by a request with the given name, or -1 if not measured */
+	public long getAllocatedBytesPerRequest(String name) {
+		if (!allocationMeasured)
+			return -1;
+		long n = getCount(name);
+		return n == 0 ? 0 : get(name).allocatedBytes.get() / n;
+	}
+	
+	/** fail if any request failed */
+	public void assertNoErrors() {
+		for (Map.Entry<String, Stats> me : stats.entrySet()) {
+			Throwable t = me.getValue().firstError.get();
+			if (t != null) {
+				Assert.fail(me.getValue().errors.get() + " " + me.getKey() + " requests failed, the first with " + t);
+			}
+		}
+	}
+	
+	/** fail if fewer than the given number of requests with the given name were completed per second */
+	public void assertThroughputAtLeast(String name, double perSecond) {
+		double t = getThroughput(name);
+		Assert.assertTrue(name + ": " + String.format("%.1f", t) + " requests/s, expected at least " + perSecond, t >= perSecond);
+	}
+	
+	/** fail if the latency at the given percentile of the requests with the given name is above the given number of milliseconds */
+	public void assertLatencyAtMost(String name, double percentile, double millis) {
+		double l = getLatencyMillis(name, percentile);
+		Assert.assertTrue(name + ": p" + percentile + " " + String.format("%.3f", l) + " ms, expected at most " + millis, l <= millis);
+	}
+	
+	/** fail if a request with the given name allocates more than the given number of bytes on average; passes if allocation is not measured */
+	public void assertAllocatedBytesAtMost(String name, long bytes) {
+		long b = getAllocatedBytesPerRequest(name);
+		Assert.assertTrue(name + ": " + b + " bytes allocated per request, expected at most " + bytes, b <= bytes);
+	}
+	
+	/** @return a table with the results */
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-30s %10s %8s %10s %10s %10s %10s %10s %12s%n", "name", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "alloc/req"));
+		for (String name : stats.keySet()) {
+			sb.append(String.format("%-30s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f %12s%n", name, getCount(name), getErrors(name), getThroughput(name),
+					getLatencyMillis(name, 50), getLatencyMillis(name, 90), getLatencyMillis(name, 99), getLatencyMillis(name, 100),
+					allocationMeasured ? String.valueOf(getAllocatedBytesPerRequest(name)) : "-"));
+		}
+		return sb.toString();
+	}
+
+}
@@ -59,6 +59,15 @@ public abstract class RenderTaskTestCase extends StRenderTestCase<IRenderTask> {
 
 	/** @return a ServletMock that forwards request to an instance of the given class */
 	protected ServletMock makeServletMock(Class<? extends SpiderServlet> servletClass) throws Exception {
+		return newServletMock(servletClass);
+	}
+	
+	/**
+	 * Same as {@link #makeServletMock(Class)}, for code that sends requests to a servlet
+	 * outside of a test case, e.g. benchmarks; {@link ServletMock#destroy()} must be called
+	 * when done with it.
+	 */
+	public static ServletMock newServletMock(Class<? extends SpiderServlet> servletClass) throws Exception {
 		final SpiderServlet servlet = servletClass.newInstance();
 		servlet.init(new ServletConfig() {
 			public String getServletName() { return null; }
@@ -82,4 +91,9 @@ public abstract class RenderTaskTestCase extends StRenderTestCase<IRenderTask> {
 		};
 	}
 	
+	/** @return a {@link LoadDriver} that sends requests to the servlet of the current test */
+	protected LoadDriver loadDriver() {
+		return new LoadDriver(LoadDriver.inProcess(getCurrentServletMock()));
+	}
+	
 }
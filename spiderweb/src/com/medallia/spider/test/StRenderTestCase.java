@@ -70,6 +70,8 @@ public abstract class StRenderTestCase<X extends StRenderable> extends TestCaseW
 		String getStContent();
 		/** @return the binary content if the task produced any */
 		byte[] getBinaryContent();
+		/** @return the status code set on the response; 200 if none was set */
+		int getStatus();
 	}
 	
 	/** @return result of Action - no request parameters */
@@ -87,10 +89,18 @@ public abstract class StRenderTestCase<X extends StRenderable> extends TestCaseW
 	
 	/** @return result of Action on the given instance; request parameters passed in the given map */
 	protected StRenderResult action(final Class<? extends X> renderableClass, final Map<String, String> params) throws Exception {
+		return service(servletMock, uriForTask(renderableClass), params, "http://" + renderableClass.getName() + "-test");
+	}
+	
+	/**
+	 * @param referer value of the Referer header, or null for none
+	 * @return result of sending a GET request for the given URI to the given ServletMock
+	 */
+	public static StRenderResult service(ServletMock servletMock, final String uri, final Map<String, String> params, final String referer) throws Exception {
 		HttpServletRequest request = new HttpServletRequestWrapper(nullProxyForInterface(HttpServletRequest.class)) {
 			@Override public String getMethod() { return "GET"; }
 			@Override public String getRequestURI() {
-				return uriForTask(renderableClass);
+				return uri;
 			}
 			@Override public String getContextPath() { return ""; }
 			@Override public Map getParameterMap() { return params; }
@@ -99,20 +109,25 @@ public abstract class StRenderTestCase<X extends StRenderable> extends TestCaseW
 			@Override public HttpSession getSession(boolean create) { return getSession(); }
 			@Override public Object getAttribute(String name) { return null; }
 			@Override public Enumeration getAttributeNames() { return Collections.enumeration(Collections.emptySet()); }
+			@Override public long getDateHeader(String name) { return -1; }
 			@Override public String getHeader(String name) {
 				if ("Referer".equals(name))
-					return "http://" + renderableClass.getName() + "-test";
+					return referer;
 				return super.getHeader(name);
 			}
 		};
 		
 		final ByteArrayOutputStream w = new ByteArrayOutputStream();
 		final String[] redirect = new String[1];
+		final int[] status = { HttpServletResponse.SC_OK };
 		
 		HttpServletResponse response = new HttpServletResponseWrapper(nullProxyForInterface(HttpServletResponse.class)) {
 			@Override public void sendRedirect(String location) throws IOException {
 				redirect[0] = location;
 			}
+			@Override public void setStatus(int sc) { status[0] = sc; }
+			@Override public void sendError(int sc) { status[0] = sc; }
+			@Override public void sendError(int sc, String msg) { status[0] = sc; }
 			@Override public ServletOutputStream getOutputStream() throws IOException {
 				return new ServletOutputStream() {
 					@Override public void write(int b) throws IOException {
@@ -139,6 +154,9 @@ public abstract class StRenderTestCase<X extends StRenderable> extends TestCaseW
 			public byte[] getBinaryContent() {
 				return w.toByteArray();
 			}
+			public int getStatus() {
+				return status[0];
+			}
 		};
 	}
 	
@@ -162,6 +180,11 @@ public abstract class StRenderTestCase<X extends StRenderable> extends TestCaseW
 	
 	private ServletMock servletMock;
 	
+	/** @return the ServletMock returned by {@link #getServletMock()} for the current test */
+	protected ServletMock getCurrentServletMock() {
+		return servletMock;
+	}
+	
 	@Override protected void safeUp() throws Exception {
 		this.servletMock = getServletMock();
 	}
@@ -0,0 +1,36 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.testasync;
+
+import com.medallia.spider.SpiderServlet;
+
+/** Servlet with tasks whose action methods return a Future; used by {@link com.medallia.spider.SpiderServletAsyncTest} */
+@SuppressWarnings("serial")
+public class AsyncServlet extends SpiderServlet {
+	
+	/** the timeout used by this servlet, see {@link #getAsyncActionTimeout()} */
+	public static final long TIMEOUT_MILLIS = 200;
+	
+	@Override protected String getDefaultURI() {
+		return "async";
+	}
+	
+	@Override protected long getAsyncActionTimeout() {
+		return TIMEOUT_MILLIS;
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.testasync.st;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.medallia.spider.RenderTask;
+import com.medallia.tiny.Implement;
+import com.medallia.tiny.SettableFuture;
+
+/**
+ * Task whose action method returns a Future which, depending on the mode parameter, is
+ * already done ("done"), completed later ("pending"), failed later ("fail") or never completed.
+ */
+public class AsyncTask extends RenderTask {
+	
+	/** delay before a pending Future is completed */
+	static final long DELAY_MILLIS = 50;
+	
+	/** completes the Futures returned from the action methods */
+	static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Implement public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "AsyncTask timer");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	@Input interface Params {
+		String mode();
+	}
+	
+	@Output interface Values {
+		V<String> MODE = v();
+	}
+	
+	Future<PostAction> action(final Params p) {
+		final SettableFuture<PostAction> f = new SettableFuture<PostAction>();
+		final String mode = p.mode();
+		if ("done".equals(mode)) {
+			attr(Values.MODE, mode);
+			f.set(null);
+		} else if ("pending".equals(mode) || "fail".equals(mode)) {
+			TIMER.schedule(new Runnable() {
+				@Implement public void run() {
+					if ("fail".equals(mode)) {
+						f.setException(new IllegalStateException("The asynchronous computation failed"));
+					} else {
+						attr(Values.MODE, mode);
+						f.set(null);
+					}
+				}
+			}, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		return f;
+	}
+	
+	@Override public String getPageTitle() {
+		return "Async";
+	}
+
+}
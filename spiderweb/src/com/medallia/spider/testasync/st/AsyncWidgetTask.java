@@ -0,0 +1,47 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.testasync.st;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.medallia.spider.EmbeddedRenderTask;
+import com.medallia.spider.Task;
+import com.medallia.tiny.Implement;
+
+/** Embedded task whose action method returns a Future that is completed later */
+public class AsyncWidgetTask extends Task implements EmbeddedRenderTask {
+	
+	@Output interface Values {
+		V<Integer> VALUE = v();
+	}
+	
+	Future<PostAction> action() {
+		return AsyncTask.TIMER.schedule(new Callable<PostAction>() {
+			@Implement public PostAction call() {
+				attr(Values.VALUE, 42);
+				return null;
+			}
+		}, AsyncTask.DELAY_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	
+	@Implement public String getStAttribute() {
+		return "widget";
+	}
+
+}
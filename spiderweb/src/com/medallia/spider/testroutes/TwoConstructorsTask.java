@@ -0,0 +1,27 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.spider.testroutes;
+
+import com.medallia.spider.Task;
+
+/** Task with more than one constructor, which is not allowed; used by {@link com.medallia.spider.TaskRoutesTest} */
+public class TwoConstructorsTask extends Task {
+	/** default constructor */
+	public TwoConstructorsTask() { }
+	/** another constructor */
+	public TwoConstructorsTask(String s) { }
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative long values, e.g. durations in nanoseconds or sizes in
+ * bytes. Recording is lock-free and does not allocate, so it can be done on every
+ * request.
+ * <p>
+ * 
+ * Values are counted in log-linear buckets: each power of two is divided into
+ * {@link #SUB_BUCKETS} buckets, so a percentile is accurate to within 1/SUB_BUCKETS
+ * of the value. Values of 2^{@link #MAX_EXPONENT} or more are counted in the last
+ * bucket. The count, sum and maximum are exact.
+ */
+public class Histogram {
+	
+	private static final int SUB_BUCKET_BITS = 3;
+	/** number of buckets each power of two is divided into */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** the largest power of two with its own buckets */
+	public static final int MAX_EXPONENT = 40;
+	
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	/** @return the index of the bucket the given value is counted in */
+	static int bucketIndex(long v) {
+		if (v < SUB_BUCKETS)
+			return (int) v;
+		int exp = 63 - Long.numberOfLeadingZeros(v);
+		if (exp > MAX_EXPONENT)
+			return BUCKET_COUNT - 1;
+		int shift = exp - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((v >> shift) - SUB_BUCKETS);
+	}
+	
+	/** @return the largest value counted in the bucket with the given index */
+	static long bucketMaxValue(int idx) {
+		if (idx < SUB_BUCKETS)
+			return idx;
+		int shift = idx / SUB_BUCKETS - 1;
+		long m = idx % SUB_BUCKETS + SUB_BUCKETS;
+		return ((m + 1) << shift) - 1;
+	}
+	
+	/** Record the given value; negative values are recorded as 0 */
+	public void record(long v) {
+		if (v < 0) v = 0;
+		buckets.incrementAndGet(bucketIndex(v));
+		count.incrementAndGet();
+		sum.addAndGet(v);
+		long m;
+		while (v > (m = max.get())) {
+			if (max.compareAndSet(m, v))
+				break;
+		}
+	}
+	
+	/** @return the number of values recorded */
+	public long getCount() {
+		return count.get();
+	}
+	
+	/** @return the sum of the values recorded */
+	public long getSum() {
+		return sum.get();
+	}
+	
+	/** @return the largest value recorded, or 0 if none */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/** @return the mean of the values recorded, or 0 if none */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+	
+	/**
+	 * @param percentile between 0 and 100
+	 * @return an upper bound of the value at the given percentile, or 0 if no values
+	 * have been recorded. Since values may be recorded concurrently this is approximate.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = 0;
+		long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++)
+			n += counts[i] = buckets.get(i);
+		if (n == 0)
+			return 0;
+		
+		long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(bucketMaxValue(i), getMax());
+		}
+		return getMax();
+	}
+
+}
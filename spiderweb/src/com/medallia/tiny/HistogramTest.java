@@ -0,0 +1,61 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny;
+
+import junit.framework.TestCase;
+
+/** Tests for {@link Histogram} */
+public class HistogramTest extends TestCase {
+	
+	/** test that each value is counted in a bucket that covers it, and that the buckets are contiguous */
+	public void testBuckets() {
+		long prevMax = -1;
+		int prevIdx = -1;
+		for (long v = 0; v < 100000; v++) {
+			int idx = Histogram.bucketIndex(v);
+			assertTrue(v + " in " + idx, v <= Histogram.bucketMaxValue(idx));
+			if (idx != prevIdx) {
+				assertEquals(prevIdx + 1, idx);
+				assertEquals(prevMax + 1, v);
+				prevIdx = idx;
+			}
+			prevMax = Histogram.bucketMaxValue(idx);
+		}
+		// the error is bounded by the sub bucket size
+		long v = 123456789;
+		assertTrue(Histogram.bucketMaxValue(Histogram.bucketIndex(v)) - v < v / Histogram.SUB_BUCKETS);
+		// large values go in the last bucket
+		assertEquals(Histogram.bucketIndex(1L << 41), Histogram.bucketIndex(Long.MAX_VALUE));
+	}
+	
+	/** test the statistics computed from the recorded values */
+	public void testPercentiles() {
+		Histogram h = new Histogram();
+		assertEquals(0, h.getValueAtPercentile(50));
+		for (int i = 1; i <= 100; i++)
+			h.record(i * 1000);
+		assertEquals(100, h.getCount());
+		assertEquals(50500.0, h.getMean());
+		assertEquals(100000, h.getMax());
+		assertEquals(100000, h.getValueAtPercentile(100));
+		long p50 = h.getValueAtPercentile(50);
+		assertTrue("p50 " + p50, p50 >= 50000 && p50 < 50000 * 9 / 8);
+		long p90 = h.getValueAtPercentile(90);
+		assertTrue("p90 " + p90, p90 >= 90000 && p90 < 90000 * 9 / 8);
+	}
+
+}
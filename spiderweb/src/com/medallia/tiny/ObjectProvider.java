@@ -24,6 +24,7 @@ import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,22 +43,45 @@ import org.apache.commons.logging.LogFactory;
  * Usually this class will be used for the {@link #makeArgsFor(Method)} method, which will find valid parameters for all
  * arguments to the function, provided such objects are registered. The parameters may have annotations, in which case the lookup
  * will be based on the annotation. If not, we will use lookup by class.
+ * 
+ * An ObjectProvider can be {@link #freeze() frozen}, after which no more objects can be registered. A frozen provider can be
+ * shared between threads, and {@link #overlay()} can be used to cheaply make a provider which has all its objects plus any
+ * registered on the overlay itself; this is equivalent to, but much cheaper than, copying the frozen provider.
  */
 public class ObjectProvider {
 	private static final Object NO_ARG = new Object(); // So we can still set the last argument to null
 	private static final Log LOG = LogFactory.getLog(ObjectProvider.class);
 	private static final Object[] NO_ARUMENTS = new Object[0];
 	
+	/** Returned by {@link #find(Class)} if no object is registered for the type */
+	private static final Object NOT_FOUND = new Object();
+	
 	private Object lastArg = NO_ARG;
 	protected final Map<Class<?>, Object> map;
 	private final Map<Class<?>, Object> annotationMap;
 	private boolean errorOnUnknownType;
+	
+	/** if non-null the objects of this provider are also available; see {@link #overlay()} */
+	private ObjectProvider parent;
+	/** true if no more objects can be registered; see {@link #freeze()} */
+	private boolean frozen;
+	
+	/** Marker stored in the resolution index for types which no registered key is assignable to */
+	private static final class NotFound { }
+	
+	/**
+	 * Map from a requested type to the key in {@link #map} used to look it up; see {@link #resolveKey(Class)}.
+	 * The index is shared with copies of this object until either registers a new key.
+	 */
+	private ConcurrentMap<Class<?>, Class<?>> resolutionIndex;
+	
 	/**
 	 * Creates a new ObjectProvider with no registered objects
 	 */
 	public ObjectProvider() { 
 		map = Empty.linkedHashMap();
 		annotationMap = Empty.linkedHashMap();
+		resolutionIndex = Empty.concurrentMap();
 	}
 	
 	/** make a new object provider by copying the given provider */
@@ -65,6 +89,8 @@ public class ObjectProvider {
 		map = Empty.linkedHashMap(from.map);
 		annotationMap = Empty.linkedHashMap(from.annotationMap);
 		lastArg = from.lastArg;
+		resolutionIndex = from.resolutionIndex;
+		parent = from.parent;
 	}
 	
 	/** @return a copy of this object */
@@ -72,6 +98,41 @@ public class ObjectProvider {
 		return new ObjectProvider(this);
 	}
 
+	/**
+	 * Make this ObjectProvider read-only; any later attempt to register an object will
+	 * throw an IllegalStateException. The copyWith methods return an {@link #overlay()}
+	 * of a frozen provider instead of copying it.
+	 * 
+	 * @return this ObjectProvider
+	 */
+	public ObjectProvider freeze() {
+		frozen = true;
+		return this;
+	}
+	
+	/** @return true if {@link #freeze()} has been called */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	/**
+	 * @return a new ObjectProvider that gives access to all the objects in this one, in
+	 * addition to the ones registered on the returned provider. Objects registered on the
+	 * returned provider are looked up as if they were registered after the ones in this
+	 * provider, which must be frozen.
+	 */
+	public ObjectProvider overlay() {
+		if (!frozen) throw new IllegalStateException("Only a frozen ObjectProvider can be overlaid: " + this);
+		ObjectProvider op = new ObjectProvider();
+		op.parent = this;
+		op.lastArg = lastArg;
+		return op;
+	}
+	
+	private void checkNotFrozen() {
+		if (frozen) throw new IllegalStateException("Cannot register objects in a frozen ObjectProvider: " + this);
+	}
+
 	/** if called an exception will be thrown if an unknown object is requested instead of passing in null */
 	public ObjectProvider errorOnUnknownType() {
 		errorOnUnknownType = true;
@@ -102,6 +163,7 @@ public class ObjectProvider {
 	 * Registers o for o.getClass() and for the provided annotation
 	 */
 	public ObjectProvider registerWithAnnotation(Class<? extends Annotation> annotation, Object o) {
+		checkNotFrozen();
 		annotationMap.put(annotation, o);
 		return register(o);
 	}
@@ -111,21 +173,74 @@ public class ObjectProvider {
 	 */
 	@SuppressWarnings("unchecked")
 	public <X> X getByAnnotation(Class<? extends Annotation> annotation, Class<X> c) {
-		Object o = annotationMap.get(annotation);
+		Object o = findByAnnotation(annotation);
 		if (o == null) LOG.warn("No object for annotation " + annotation + " in " + this);
 		
 //		We do a safe cast if possible here, since we do not know what type of object was used when registering
 		return c.isPrimitive() ? (X)o : c.cast(o);
 	}
 	
+	private Object findByAnnotation(Class<? extends Annotation> annotation) {
+		Object o = annotationMap.get(annotation);
+		if (o == null && parent != null)
+			o = parent.findByAnnotation(annotation);
+		return o;
+	}
+	
 	/**
 	 * Registers o for c.
 	 */
 	public <X> ObjectProvider register(Class<X> c, X o) {
-		map.put(c, o);
+		put(c, o);
 		return this;
 	}
 	
+	private void put(Class<?> c, Object o) {
+		checkNotFrozen();
+		if (!map.containsKey(c))
+			resolutionIndex = indexWithNewKey(c);
+		map.put(c, o);
+	}
+	
+	/**
+	 * @return the resolution index to use after adding the given key to {@link #map}. Since the
+	 * key is added last in iteration order, it only changes the result for types it is assignable
+	 * to which either had no match or is the key itself.
+	 */
+	private ConcurrentMap<Class<?>, Class<?>> indexWithNewKey(Class<?> key) {
+		ConcurrentMap<Class<?>, Class<?>> idx = Empty.concurrentMap();
+		for (Map.Entry<Class<?>, Class<?>> e : resolutionIndex.entrySet()) {
+			Class<?> requested = e.getKey();
+			if (!requested.isAssignableFrom(key) || (e.getValue() != NotFound.class && requested != key))
+				idx.put(requested, e.getValue());
+		}
+		return idx;
+	}
+	
+	/**
+	 * @return the key in {@link #map} used to look up objects of the given type, or null if there is
+	 * none. This is the type itself if registered, otherwise the first registered key which is
+	 * assignable to it. The result is memoized in {@link #resolutionIndex}.
+	 */
+	private Class<?> resolveKey(Class<?> c) {
+		Class<?> k = resolutionIndex.get(c);
+		if (k == null) {
+			k = NotFound.class;
+			if (map.containsKey(c)) {
+				k = c;
+			} else {
+				for (Class<?> mappedClass : map.keySet()) {
+					if (c.isAssignableFrom(mappedClass)) {
+						k = mappedClass;
+						break;
+					}
+				}
+			}
+			resolutionIndex.put(c, k);
+		}
+		return k == NotFound.class ? null : k;
+	}
+	
 	/** Object that can produce another object */
 	public interface ObjectFactory<X> {
 		/** @return the produced object */
@@ -156,7 +271,7 @@ public class ObjectProvider {
 	 * objects explicitly.
 	 */
 	public <X> ObjectProvider registerFactory(Class<X> c, ObjectFactory<X> of) {
-		map.put(c, of);
+		put(c, of);
 		return this;
 	}
 	
@@ -165,14 +280,8 @@ public class ObjectProvider {
 	 */
 	@SuppressWarnings("unchecked")
 	public <X> X get(Class<X> c) {
-		if (map.containsKey(c)) return (X) toValue(map.get(c)); //c.cast(e.value()) will fail if c.isPrimitive()
-		for (Map.Entry<Class<?>, Object> e : map.entrySet()) {
-			if (c.isAssignableFrom(e.getKey())) {
-				Object v = toValue(e.getValue());
-				LOG.debug("Returning "  + v + " with key " + e.getKey() + " for " + c);
-				return (X) v;
-			}
-		}
+		Object v = find(c);
+		if (v != NOT_FOUND) return (X) v; //c.cast(e.value()) will fail if c.isPrimitive()
 		String msg = "No object registred for " + c + " in " + this;
 		if (errorOnUnknownType) {
 			throw new RuntimeException(msg);
@@ -182,6 +291,25 @@ public class ObjectProvider {
 		}
 	}
 	
+	/**
+	 * @return the object for the given type, or {@link #NOT_FOUND}. An exact match in this provider wins,
+	 * then the match found by the parent (since its objects were registered first), then the first
+	 * registered key in this provider assignable to the type.
+	 */
+	private Object find(Class<?> c) {
+		if (parent != null) {
+			if (map.containsKey(c)) return toValue(map.get(c));
+			Object v = parent.find(c);
+			if (v != NOT_FOUND) return v;
+		}
+		Class<?> k = resolveKey(c);
+		if (k == null) return NOT_FOUND;
+		Object v = toValue(map.get(k));
+		if (k != c && LOG.isDebugEnabled())
+			LOG.debug("Returning "  + v + " with key " + k + " for " + c);
+		return v;
+	}
+	
 	private Object toValue(Object obj) {
 		if (obj instanceof ObjectFactory) {
 			obj = ((ObjectFactory)obj).make();
@@ -193,34 +321,36 @@ public class ObjectProvider {
 	 * @return True if an object of type c is registered with this ObjectProvider, false otherwise
 	 */
 	public boolean has(Class<?> c) {
-		if (map.containsKey(c)) return true; //c.cast(e.value()) will fail if c.isPrimitive()
-		for (Class<?> mappedclass : map.keySet()) {
-			if (c.isAssignableFrom(mappedclass)) return true;
-		}
-		return false;
+		return (parent != null && parent.has(c)) || resolveKey(c) != null;
 	}
+	
+	/** @return a copy of this object, or an {@link #overlay()} if this object is frozen */
+	private ObjectProvider copyOrOverlay() {
+		return frozen ? overlay() : copyObjectProvider();
+	}
+	
 	/**
 	 * @return a copy of this, with the extra object o registered
 	 */
 	public ObjectProvider copyWith(Object o) {
-		return copyObjectProvider().register(o);
+		return copyOrOverlay().register(o);
 	}
 
 	/**
 	 * @return a copy of this, with the extra object o registered
 	 */
 	public <X> ObjectProvider copyWith(Class<X> c, X o) {
-		return copyObjectProvider().register(c, o);
+		return copyOrOverlay().register(c, o);
 	}
 	@Override public String toString() {
-		return "ObjectProvider: " + Arrays.toString(new Object[]{map, annotationMap, lastArg}); 
+		return "ObjectProvider: " + Arrays.toString(new Object[]{map, annotationMap, lastArg}) + (parent != null ? " over " + parent : ""); 
 	}
 	
 	/**
 	 * Returns an ObjectProvivder that will use the provided object as the last object when calling {@link #makeArgsFor(Method)}
 	 */
 	public ObjectProvider copyWithLast(Object o) {
-		ObjectProvider op = copyObjectProvider();
+		ObjectProvider op = copyOrOverlay();
 		op.lastArg = o;
 		return op;
 	}
@@ -231,31 +361,68 @@ public class ObjectProvider {
 	 * If a lastArg is specified for this ObjectProvider, the last argument will be that object.
 	 */
 	public Object[] makeArgsFor(Method m) {
-		Class<?>[] pt = m.getParameterTypes();
-		Annotation[][] a = m.getParameterAnnotations();
-		return makeArgsFor(pt, a);
+		return makeArgsFor(argsPlanFor(m));
 	}
 	/** Same as {@link #makeArgsFor(Method)}, but for a {@link Constructor} */
 	public Object[] makeArgsFor(Constructor cons) {
-		return makeArgsFor(cons.getParameterTypes(), cons.getParameterAnnotations());
+		return makeArgsFor(argsPlanFor(cons));
 	}
 
-	private Object[] makeArgsFor(Class<?>[] pt, Annotation[][] a) {
+	/** Same as {@link #makeArgsFor(Method)}, but for a plan obtained from {@link #argsPlanFor(Method)} */
+	public Object[] makeArgsFor(ArgsPlan plan) {
+		Class<?>[] pt = plan.types;
+		Class<? extends Annotation>[] a = plan.annotations;
 		if (pt.length == 0) return NO_ARUMENTS;
 		Object[] params = new Object[pt.length];
 		for (int i = 0; i < pt.length; i++) {
 			if (i == pt.length - 1 && lastArg != NO_ARG)
 				params[i] = lastArg;
-			else {
+			else if (a[i] != null)
+				params[i] = getByAnnotation(a[i], pt[i]);
+			else
+				params[i] = get(pt[i]);
+		}
+		return params;
+	}
+	
+	/**
+	 * The parameter types and the annotation (if any) of each parameter of a
+	 * method or constructor. Obtaining these via reflection copies arrays on each
+	 * call, thus code that invokes the same method or constructor repeatedly should
+	 * obtain the plan once from {@link ObjectProvider#argsPlanFor(Method)} and keep it
+	 * along with the method or constructor.
+	 */
+	public static final class ArgsPlan {
+		private final Class<?>[] types;
+		private final Class<? extends Annotation>[] annotations;
+		
+		private ArgsPlan(Class<?>[] types, Annotation[][] a) {
+			this.types = types;
+			@SuppressWarnings("unchecked")
+			Class<? extends Annotation>[] annotations = (Class<? extends Annotation>[]) new Class<?>[types.length];
+			for (int i = 0; i < types.length; i++) {
 				if (a[i].length == 1)
-					params[i] = getByAnnotation(a[i][0].annotationType(), pt[i]);
-				else if (a[i].length == 0)
-					params[i] = get(pt[i]);
-				else
+					annotations[i] = a[i][0].annotationType();
+				else if (a[i].length > 1)
 					throw new IllegalArgumentException("Parameter " + i + " has multiple annotations");
 			}
+			this.annotations = annotations;
 		}
-		return params;
+		
+		/** @return the number of parameters */
+		public int size() {
+			return types.length;
+		}
+	}
+	
+	/** @return a new {@link ArgsPlan} for the given method */
+	public static ArgsPlan argsPlanFor(Method m) {
+		return new ArgsPlan(m.getParameterTypes(), m.getParameterAnnotations());
+	}
+	
+	/** @return a new {@link ArgsPlan} for the given constructor */
+	public static ArgsPlan argsPlanFor(Constructor<?> cons) {
+		return new ArgsPlan(cons.getParameterTypes(), cons.getParameterAnnotations());
 	}
 
 }
\ No newline at end of file
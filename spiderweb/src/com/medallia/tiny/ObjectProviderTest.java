@@ -0,0 +1,112 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+/** Tests for the type resolution done by {@link ObjectProvider} */
+public class ObjectProviderTest extends TestCase {
+	
+	/** test that lookups by super type are still correct after new keys are registered */
+	public void testResolutionAfterRegister() {
+		ObjectProvider op = new ObjectProvider();
+		assertFalse(op.has(List.class));
+		assertNull(op.get(List.class));
+		
+		ArrayList<String> al = Empty.arrayList();
+		op.register(al);
+		assertTrue(op.has(List.class));
+		assertSame(al, op.get(List.class));
+		assertSame(al, op.get(Collection.class));
+		
+		// the first registered key is still used for super types
+		LinkedList<String> ll = Empty.linkedList();
+		op.register(ll);
+		assertSame(al, op.get(List.class));
+		assertSame(ll, op.get(LinkedList.class));
+		
+		// an exact match wins over the first assignable key
+		List<String> l = Empty.list();
+		op.register(List.class, l);
+		assertSame(l, op.get(List.class));
+		assertSame(al, op.get(Collection.class));
+	}
+	
+	/** test that copies do not see objects registered in the original after the copy was made, and vice versa */
+	public void testCopiesAreIndependent() {
+		ObjectProvider op = new ObjectProvider();
+		assertNull(op.get(List.class));
+		
+		ArrayList<String> al = Empty.arrayList();
+		ObjectProvider copy = op.copyWith(al);
+		assertSame(al, copy.get(List.class));
+		assertNull(op.get(List.class));
+		
+		LinkedList<String> ll = Empty.linkedList();
+		op.register(ll);
+		assertSame(ll, op.get(List.class));
+		assertSame(al, copy.get(List.class));
+	}
+	
+	/** test that an overlay resolves types the same way as a single provider with all the objects would */
+	public void testOverlay() {
+		ArrayList<String> al = Empty.arrayList();
+		ObjectProvider app = new ObjectProvider().register(al).freeze();
+		
+		LinkedList<String> ll = Empty.linkedList();
+		ObjectProvider op = app.overlay().register(ll);
+		assertSame(al, op.get(List.class));
+		assertSame(al, op.get(ArrayList.class));
+		assertSame(ll, op.get(LinkedList.class));
+		assertNull(app.get(LinkedList.class));
+		
+		List<String> l = Empty.list();
+		op.register(List.class, l);
+		assertSame(l, op.get(List.class));
+		
+		ObjectProvider copy = op.freeze().copyWith("x");
+		assertEquals("x", copy.get(CharSequence.class));
+		assertSame(l, copy.get(List.class));
+		assertFalse(op.has(CharSequence.class));
+		
+		try {
+			app.register("y");
+			fail("frozen");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+	
+	/** test that the value registered for an existing key is returned after it is replaced */
+	public void testReplaceValue() {
+		ObjectProvider op = new ObjectProvider();
+		op.register(Empty.<String>arrayList());
+		assertEquals(0, op.get(List.class).size());
+		
+		ArrayList<String> al = Empty.arrayList();
+		al.add("x");
+		op.register(al);
+		assertSame(al, op.get(List.class));
+	}
+
+}
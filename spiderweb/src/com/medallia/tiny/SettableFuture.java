@@ -0,0 +1,129 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future whose value is set explicitly, and which runs listeners when it is
+ * set. This allows the thread waiting for the value to be released instead,
+ * e.g. so that a request can be suspended until the result of a backend call
+ * is available.
+ * 
+ * @param <V> type of the value
+ */
+public class SettableFuture<V> implements Future<V> {
+	
+	private final CountDownLatch done = new CountDownLatch(1);
+	/** the listeners to run when the value is set; null once they have been run. Guarded by this. */
+	private List<Runnable> listeners = Empty.list();
+	private V value;
+	private Throwable error;
+	
+	/** @return a SettableFuture which is set to the result of the given Callable, which is run by the given Executor */
+	public static <V> SettableFuture<V> submit(Executor executor, final Callable<V> c) {
+		final SettableFuture<V> f = new SettableFuture<V>();
+		executor.execute(new Runnable() {
+			@Implement public void run() {
+				try {
+					f.set(c.call());
+				} catch (Throwable t) {
+					f.setException(t);
+				}
+			}
+		});
+		return f;
+	}
+	
+	/** Set the value; this has no effect if the value has already been set */
+	public void set(V value) {
+		complete(value, null);
+	}
+	
+	/** Complete the future with the given exception, which is thrown (wrapped in an ExecutionException) from the get methods */
+	public void setException(Throwable t) {
+		if (t == null)
+			throw new NullPointerException();
+		complete(null, t);
+	}
+	
+	private void complete(V value, Throwable error) {
+		List<Runnable> l;
+		synchronized (this) {
+			if (listeners == null)
+				return;
+			this.value = value;
+			this.error = error;
+			// counted down before the listeners are cleared, so that isDone is true once
+			// addListener runs a listener immediately
+			done.countDown();
+			l = listeners;
+			listeners = null;
+		}
+		for (Runnable r : l)
+			r.run();
+	}
+	
+	/** Run the given listener when the value is set, or immediately if it has already been set */
+	public void addListener(Runnable r) {
+		synchronized (this) {
+			if (listeners != null) {
+				listeners.add(r);
+				return;
+			}
+		}
+		r.run();
+	}
+	
+	/** @return false; the future cannot be cancelled */
+	@Implement public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+	
+	@Implement public boolean isCancelled() {
+		return false;
+	}
+	
+	@Implement public boolean isDone() {
+		return done.getCount() == 0;
+	}
+	
+	@Implement public V get() throws InterruptedException, ExecutionException {
+		done.await();
+		return getValue();
+	}
+	
+	@Implement public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit))
+			throw new TimeoutException();
+		return getValue();
+	}
+	
+	private synchronized V getValue() throws ExecutionException {
+		if (error != null)
+			throw new ExecutionException(error);
+		return value;
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+/** Tests for {@link SettableFuture} */
+public class SettableFutureTest extends TestCase {
+	
+	private final List<String> events = Empty.list();
+	
+	/** @return a listener that adds the given event to {@link #events} */
+	private Runnable listener(final String event) {
+		return new Runnable() {
+			@Implement public void run() {
+				events.add(event);
+			}
+		};
+	}
+	
+	/** Test that listeners are run when the value is set, and only the first value is kept */
+	public void testSet() throws Exception {
+		SettableFuture<String> f = new SettableFuture<String>();
+		f.addListener(listener("a"));
+		assertFalse(f.isDone());
+		try {
+			f.get(10, TimeUnit.MILLISECONDS);
+			fail("should time out");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertTrue(events.isEmpty());
+		
+		f.set("x");
+		assertTrue(f.isDone());
+		assertEquals("x", f.get());
+		assertEquals(Arrays.asList("a"), events);
+		
+		f.set("y");
+		assertEquals("x", f.get(0, TimeUnit.MILLISECONDS));
+		f.addListener(listener("b"));
+		assertEquals(Arrays.asList("a", "b"), events);
+	}
+	
+	/** Test that an exception is thrown from get, wrapped in an ExecutionException */
+	public void testSetException() throws Exception {
+		SettableFuture<String> f = new SettableFuture<String>();
+		f.addListener(listener("a"));
+		IllegalStateException ex = new IllegalStateException();
+		f.setException(ex);
+		assertEquals(Arrays.asList("a"), events);
+		try {
+			f.get();
+			fail("should throw");
+		} catch (ExecutionException e) {
+			assertSame(ex, e.getCause());
+		}
+	}
+	
+	/** Test that the result of a submitted Callable is set */
+	public void testSubmit() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			SettableFuture<String> f = SettableFuture.submit(executor, new Callable<String>() {
+				@Implement public String call() throws Exception {
+					return "x";
+				}
+			});
+			assertEquals("x", f.get(10, TimeUnit.SECONDS));
+			
+			f = SettableFuture.submit(executor, new Callable<String>() {
+				@Implement public String call() throws Exception {
+					throw new IllegalStateException("failed");
+				}
+			});
+			try {
+				f.get(10, TimeUnit.SECONDS);
+				fail("should throw");
+			} catch (ExecutionException e) {
+				assertEquals("failed", e.getCause().getMessage());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces concurrent computations of the same key: while a thread computes
+ * the value for a key, other threads asking for the same key wait for that
+ * computation and share its result instead of starting their own. A failure
+ * is propagated to every waiting thread. Results are not kept once the
+ * computation has finished.
+ *
+ * @param <V> type of the computed values
+ */
+public class SingleFlight<V> {
+	
+	/** The result of {@link SingleFlight#run} */
+	public static class Result<V> {
+		private final V value;
+		private final boolean computed;
+		Result(V value, boolean computed) {
+			this.value = value;
+			this.computed = computed;
+		}
+		/** @return the computed value */
+		public V getValue() {
+			return value;
+		}
+		/** @return true if the value was computed by the calling thread, false if it was shared by another thread */
+		public boolean isComputed() {
+			return computed;
+		}
+	}
+	
+	/** A computation in progress */
+	private static class Flight<V> {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile V value;
+		private volatile Throwable error;
+	}
+	
+	private final ConcurrentMap<Object, Flight<V>> flights = Empty.concurrentMap();
+	
+	/**
+	 * Compute the value for the given key, or wait for the computation already in progress
+	 * for it. An exception thrown by the computation is thrown unchanged from the thread
+	 * that ran it, and wrapped in a RuntimeException in the threads that waited for it.
+	 * 
+	 * @param description describes the computation in exception messages; the key is not used
+	 * for this since it may contain data that should not be logged
+	 * @param timeoutMillis maximum number of milliseconds to wait for a computation started
+	 * by another thread; a RuntimeException is thrown if it takes longer
+	 */
+	public Result<V> run(Object key, String description, long timeoutMillis, Callable<V> computation) {
+		Flight<V> f = new Flight<V>();
+		Flight<V> inProgress = flights.putIfAbsent(key, f);
+		if (inProgress != null)
+			return new Result<V>(await(description, inProgress, timeoutMillis), false);
+		
+		try {
+			f.value = computation.call();
+			return new Result<V>(f.value, true);
+		} catch (Throwable t) {
+			f.error = t;
+			throw Rethrow.uncheckedThrow(t);
+		} finally {
+			flights.remove(key, f);
+			f.done.countDown();
+		}
+	}
+	
+	private V await(String description, Flight<V> f, long timeoutMillis) {
+		try {
+			if (!f.done.await(timeoutMillis, TimeUnit.MILLISECONDS))
+				throw new RuntimeException("Timed out after " + timeoutMillis + " ms waiting for the computation of " + description);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for the computation of " + description, e);
+		}
+		if (f.error != null)
+			throw new RuntimeException("The computation of " + description + " failed in another thread", f.error);
+		return f.value;
+	}
+	
+	/** @return the number of computations in progress */
+	public int size() {
+		return flights.size();
+	}
+
+}
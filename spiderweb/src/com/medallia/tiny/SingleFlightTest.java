@@ -0,0 +1,156 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.medallia.tiny.SingleFlight.Result;
+
+/** Tests for {@link SingleFlight} */
+public class SingleFlightTest extends TestCase {
+	
+	private final SingleFlight<String> sf = new SingleFlight<String>();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	/** released to let the computation in progress finish */
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final AtomicInteger computations = new AtomicInteger();
+	/** the threads started by {@link #start} */
+	private final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+	
+	@Override protected void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+	
+	/** @return a computation which returns the given value, or fails if it is null, once {@link #release} is released */
+	private Callable<String> computation(final String value) {
+		return new Callable<String>() {
+			@Implement public String call() throws Exception {
+				computations.incrementAndGet();
+				release.await();
+				if (value == null)
+					throw new IllegalStateException("failed");
+				return value;
+			}
+		};
+	}
+	
+	/** start the given number of threads that run the given computation of the given key */
+	private List<Future<Result<String>>> start(int n, final String key, final long timeoutMillis, final Callable<String> c) throws InterruptedException {
+		List<Future<Result<String>>> l = Empty.list();
+		for (int i = 0; i < n; i++) {
+			l.add(executor.submit(new Callable<Result<String>>() {
+				@Implement public Result<String> call() {
+					threads.add(Thread.currentThread());
+					return sf.run(key, "test", timeoutMillis, c);
+				}
+			}));
+			// let the first thread start the computation
+			if (i == 0) {
+				while (sf.size() == 0)
+					Thread.sleep(1);
+			}
+		}
+		return l;
+	}
+	
+	/**
+	 * wait until the given number of threads have joined the computation in progress, i.e. wait with
+	 * a timeout for it to finish; the thread running the computation waits for {@link #release} without one
+	 */
+	private void awaitWaiters(int n) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		int waiting;
+		while ((waiting = countTimedWaiting()) < n) {
+			if (System.currentTimeMillis() > deadline)
+				fail("Only " + waiting + " of " + n + " threads joined the computation");
+			Thread.sleep(1);
+		}
+	}
+	
+	private int countTimedWaiting() {
+		int k = 0;
+		for (Thread t : threads)
+			if (t.getState() == Thread.State.TIMED_WAITING) k++;
+		return k;
+	}
+	
+	/** concurrent computations of the same key are done once */
+	public void testShared() throws Exception {
+		List<Future<Result<String>>> l = start(5, "k", 10000, computation("v"));
+		Result<String> other = sf.run("other", "test", 1000, new Callable<String>() {
+			@Implement public String call() { return "o"; }
+		});
+		assertEquals("o", other.getValue());
+		assertTrue(other.isComputed());
+		
+		awaitWaiters(4);
+		release.countDown();
+		int computed = 0;
+		for (Future<Result<String>> f : l) {
+			Result<String> r = f.get(10, TimeUnit.SECONDS);
+			assertEquals("v", r.getValue());
+			if (r.isComputed()) computed++;
+		}
+		assertEquals(1, computed);
+		assertEquals(1, computations.get());
+		assertEquals(0, sf.size());
+	}
+	
+	/** a failure is propagated to all threads */
+	public void testFailure() throws Exception {
+		List<Future<Result<String>>> l = start(3, "k", 10000, computation(null));
+		awaitWaiters(2);
+		release.countDown();
+		for (Future<Result<String>> f : l) {
+			try {
+				f.get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				Throwable t = e.getCause();
+				if (!(t instanceof IllegalStateException))
+					t = t.getCause();
+				assertEquals("failed", t.getMessage());
+			}
+		}
+		assertEquals(1, computations.get());
+	}
+	
+	/** a thread gives up waiting after the timeout; the key is not part of the message */
+	public void testTimeout() throws Exception {
+		start(1, "session=secret", 10000, computation("v"));
+		try {
+			sf.run("session=secret", "test", 10, computation("x"));
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Timed out"));
+			assertFalse(e.getMessage(), e.getMessage().contains("secret"));
+		}
+		release.countDown();
+	}
+
+}
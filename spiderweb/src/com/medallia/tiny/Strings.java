@@ -289,6 +289,38 @@ public class Strings {
 		return l;
 	}
 	
+	/** characters with a special meaning in a regular expression */
+	private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+	
+	/** @return true if the given regular expression only matches the string itself */
+	public static boolean isLiteralRegex(String regex) {
+		for (int i = 0; i < regex.length(); i++) {
+			if (REGEX_META_CHARS.indexOf(regex.charAt(i)) >= 0)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Splits the given string on the given non-empty literal separator. The result is
+	 * the same as String.split(sep, -1) for separators where {@link #isLiteralRegex(String)}
+	 * is true, but the regular expression engine is not used.
+	 */
+	public static String[] splitLiteral(String s, String sep) {
+		int n = 1;
+		for (int i = s.indexOf(sep); i >= 0; i = s.indexOf(sep, i + sep.length()))
+			n++;
+		String[] r = new String[n];
+		int start = 0;
+		for (int k = 0; k < n - 1; k++) {
+			int i = s.indexOf(sep, start);
+			r[k] = s.substring(start, i);
+			start = i + sep.length();
+		}
+		r[n - 1] = s.substring(start);
+		return r;
+	}
+	
 	/** split the given string on the given regex and return all non-empty elements */
 	public static List<String> splitNoEmpty(String s, String regex) {
 		List<String> l = Empty.list();
@@ -672,6 +704,18 @@ public class Strings {
 				check(wrapLines(s[i], 4), s[i+1]);
 			}
 		}
+		/** test that the {@link Strings#splitLiteral(String, String)} method works like String.split */
+		public void testSplitLiteral() {
+			String[] s = { "", ",", "a", "a,b", ",a,,b,", "a,,", ",,," };
+			for (String x : s)
+				assertEquals(x, Arrays.asList(x.split(",", -1)), Arrays.asList(splitLiteral(x, ",")));
+			assertEquals(Arrays.asList("a", "b", "", "c"), Arrays.asList(splitLiteral("a::b::::c", "::")));
+			assertTrue(isLiteralRegex(","));
+			assertTrue(isLiteralRegex("::"));
+			assertFalse(isLiteralRegex("\\s*,\\s*"));
+			assertFalse(isLiteralRegex("|"));
+		}
+		
 		private void check(String expect, String was) {
 			String p1 = expect.replace('\n', '$');
 			String p2 = was.replace('\n', '$');
@@ -0,0 +1,167 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny.string;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Escapes text for inclusion in HTML. The escaping is table driven: each char in
+ * the BMP maps to how it is escaped, if at all. Strings without any characters
+ * that need escaping are returned as is, and the escaped form can be appended
+ * directly to an {@link Appendable} (e.g. a Writer) to avoid creating a String.
+ */
+public class HtmlEscaper {
+	
+	/** Escapes the same way as {@link HtmlString#escape(String)} has always done */
+	public static final HtmlEscaper NUMERIC = makeNumeric();
+	
+	/** Escapes the same way as {@link StringEscapeUtils#escapeHtml(String)} */
+	public static final HtmlEscaper HTML40 = makeHtml40();
+	
+	private static final byte LITERAL = 0, NAMED = 1, NUMERIC_REF = 2;
+	
+	/** how each char is escaped: {@link #LITERAL}, {@link #NAMED} or {@link #NUMERIC_REF} */
+	private final byte[] kind = new byte[Character.MAX_VALUE + 1];
+	/** the entity (including '&' and ';') for the chars that are {@link #NAMED} */
+	private final String[] names;
+	
+	private HtmlEscaper(String[] names) {
+		this.names = names;
+	}
+	
+	private static HtmlEscaper makeNumeric() {
+		HtmlEscaper e = new HtmlEscaper(new String[128]);
+		for (int c = 0; c <= Character.MAX_VALUE; c++)
+			e.kind[c] = c >= 32 && c < 126 && "<>'\\\"&".indexOf(c) < 0 ? LITERAL : NUMERIC_REF;
+		e.setName('&', "amp");
+		e.setName('<', "lt");
+		e.setName('>', "gt");
+		return e;
+	}
+	
+	private static HtmlEscaper makeHtml40() {
+		// the entity map used by StringEscapeUtils is not public, so ask it about each char
+		String[] escaped = new String[Character.MAX_VALUE + 1];
+		int max = 0;
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			String s = String.valueOf((char) c);
+			String e = StringEscapeUtils.escapeHtml(s);
+			if (!e.equals(s) && !e.startsWith("&#")) {
+				escaped[c] = e;
+				max = c;
+			} else {
+				escaped[c] = e.equals(s) ? null : "";
+			}
+		}
+		HtmlEscaper e = new HtmlEscaper(new String[max + 1]);
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			if (escaped[c] == null) {
+				e.kind[c] = LITERAL;
+			} else if (escaped[c].length() == 0) {
+				e.kind[c] = NUMERIC_REF;
+			} else {
+				e.kind[c] = NAMED;
+				e.names[c] = escaped[c];
+			}
+		}
+		return e;
+	}
+	
+	private void setName(char c, String name) {
+		kind[c] = NAMED;
+		names[c] = "&" + name + ";";
+	}
+	
+	/** @return the escaped form of the given string, which is the string itself if nothing needs escaping */
+	public String escape(String s) {
+		int n = s.length();
+		int i = 0;
+		while (i < n && kind[s.charAt(i)] == LITERAL)
+			i++;
+		if (i == n)
+			return s;
+		
+		StringBuilder sb = new StringBuilder(n + 16);
+		sb.append(s, 0, i);
+		escape(s, i, sb);
+		return sb.toString();
+	}
+	
+	/** Append the escaped form of the given string */
+	public void escape(CharSequence s, StringBuilder sb) {
+		escape(s, 0, sb);
+	}
+	
+	private void escape(CharSequence s, int start, StringBuilder sb) {
+		try {
+			escape(s, start, (Appendable) sb);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	/** Append the escaped form of the given string, e.g. to a Writer */
+	public void escape(CharSequence s, Appendable out) throws IOException {
+		escape(s, 0, out);
+	}
+	
+	private void escape(CharSequence s, int start, Appendable out) throws IOException {
+		int n = s.length();
+		// start of the run of chars not yet appended that do not need escaping
+		int literalStart = start;
+		for (int i = start; i < n; i++) {
+			char c = s.charAt(i);
+			byte k = kind[c];
+			if (k == LITERAL) continue;
+			
+			if (literalStart < i)
+				appendRange(s, literalStart, i, out);
+			literalStart = i + 1;
+			
+			if (k == NAMED) {
+				out.append(names[c]);
+			} else {
+				out.append('&').append('#');
+				appendDecimal(c, out);
+				out.append(';');
+			}
+		}
+		if (literalStart < n)
+			appendRange(s, literalStart, n, out);
+	}
+	
+	private static void appendRange(CharSequence s, int start, int end, Appendable out) throws IOException {
+		// Writer.append(CharSequence, int, int) creates a substring
+		if (out instanceof Writer && s instanceof String)
+			((Writer) out).write((String) s, start, end - start);
+		else
+			out.append(s, start, end);
+	}
+	
+	/** append the decimal representation of the given char value without creating a String */
+	private static void appendDecimal(int v, Appendable out) throws IOException {
+		int div = 10000;
+		while (div > 1 && v < div)
+			div /= 10;
+		for (; div > 0; div /= 10)
+			out.append((char) ('0' + (v / div) % 10));
+	}
+
+}
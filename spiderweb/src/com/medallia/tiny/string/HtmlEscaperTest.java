@@ -0,0 +1,69 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny.string;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+import com.medallia.tiny.EncodingTest;
+
+public class HtmlEscaperTest extends TestCase {
+	
+	/** the implementation of {@link HtmlString#escape(String)} before {@link HtmlEscaper} was added */
+	private static String numericEscape(String s) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 128 || !HtmlString.safeForHtml[c]) {
+				if (c=='&') sb.append("&amp;");
+				else if (c=='<') sb.append("&lt;");
+				else if (c=='>') sb.append("&gt;");
+				else sb.append("&#").append((int)c).append(";");
+			} else sb.append(c);
+		}
+		return sb.toString();
+	}
+	
+	public void testAllChars() throws Exception {
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			String s = "a" + (char) c + "b";
+			assertEquals("char " + c, StringEscapeUtils.escapeHtml(s), HtmlEscaper.HTML40.escape(s));
+			assertEquals("char " + c, numericEscape(s), HtmlEscaper.NUMERIC.escape(s));
+			
+			StringWriter w = new StringWriter();
+			HtmlEscaper.HTML40.escape(s, w);
+			assertEquals("char " + c, StringEscapeUtils.escapeHtml(s), w.toString());
+		}
+	}
+	
+	public void testStrings() {
+		for (String s : new String[] { "", EncodingTest.EUROPEAN, EncodingTest.SPECIALCHARS, EncodingTest.FOREIGN_MIX, EncodingTest.EVIL_STRING }) {
+			assertEquals(StringEscapeUtils.escapeHtml(s), HtmlEscaper.HTML40.escape(s));
+			assertEquals(numericEscape(s), HtmlEscaper.NUMERIC.escape(s));
+		}
+	}
+	
+	public void testNothingToEscape() {
+		String s = EncodingTest.ENGLISH;
+		assertSame(s, HtmlEscaper.HTML40.escape(s));
+		assertSame(s, HtmlEscaper.NUMERIC.escape(s));
+	}
+
+}
@@ -67,10 +67,11 @@ public class HtmlString extends StringBase implements Htmlable {
 	 * @return
 	 */
 	public static HtmlString cat(Iterable<CharSequence> cs) {
-		StringBuffer sb = new StringBuffer();
+		StringBuilder sb = new StringBuilder();
 		for (CharSequence c : cs) {
 			if (c==null) continue;
-			sb.append(escapeIfNecessary(c));
+			if (c instanceof Htmlable) sb.append(((Htmlable) c).getHtml().asString());
+			else HtmlEscaper.NUMERIC.escape(c, sb);
 		}
 		return new HtmlString(sb.toString());
 	}
@@ -123,24 +124,12 @@ public class HtmlString extends StringBase implements Htmlable {
 		return !Strings.hasContent(asString());
 	}
 	
+	/** @return the given string with '&', '<' and '>' replaced by entities and all other chars
+	 * that are not printable ASCII (and quotes and backslash) by numeric character references; see {@link HtmlEscaper#NUMERIC} */
 	public static String escape(String s) {
 		if (s==null) return null;
-		StringBuffer sb = new StringBuffer();
-		for (int i = 0; i < s.length(); i++) {
-			char c = s.charAt(i);
-			if (c >= 128 || !safeForHtml[c]) {
-				if (c=='&') sb.append("&amp;");
-				else if (c=='<') sb.append("&lt;");
-				else if (c=='>') sb.append("&gt;");
-				else {
-					sb.append("&#");
-					sb.append((int)c);
-					sb.append(";");
-				}
-			} else sb.append(c);
-		}
-		return sb.toString();
-	} 
+		return HtmlEscaper.NUMERIC.escape(s);
+	}
 	static boolean safeForHtml[] = new boolean[128];
 	static {
 		for (char c = 32; c<126; c++)
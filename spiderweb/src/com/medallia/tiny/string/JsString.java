@@ -16,6 +16,7 @@
  */
 package com.medallia.tiny.string;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 
@@ -56,7 +57,13 @@ public class JsString extends StringBase {
 	}
 	/** @return JsString representation of the given argument */
 	public static JsString forString(String s) {
-		 return new JsString(escapeStr(s));
+		StringBuilder sb = new StringBuilder(s == null ? 32 : s.length() + 2);
+		try {
+			new JsWriter(sb).writeString(s);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return new JsString(sb.toString());
 	}
 	/** @return JsString representation of the given argument */
 	public static JsString forNumber(Number n) {
@@ -72,69 +79,48 @@ public class JsString extends StringBase {
 		StringBuilder sb = new StringBuilder("[");
 		String sep = "";
 		for (Integer i : c) {
-			sb.append(sep).append(Integer.toString(i));
+			sb.append(sep).append(i.intValue());
 			sep=",";
 		}
 		return new JsString(sb.append("]").toString());
 	}
 	/** @return JsString representation of the given argument */
 	public static JsString forArray(Collection<?> c) {
-		StringBuilder sb = new StringBuilder("[");
-		String sep = "";
-		for (Object val : c) {
-			sb.append(sep).append(forObject(val, DEFAULT_MAP_SEPARATOR).getRawJs());
-			sep=",";
+		StringBuilder sb = new StringBuilder();
+		try {
+			new JsWriter(sb).writeArray(c);
+		} catch (IOException e) {
+			throw new AssertionError(e);
 		}
-		return new JsString(sb.append("]").toString());
+		return new JsString(sb.toString());
 	}
-	/** Default map separator. */
-	private static final String DEFAULT_MAP_SEPARATOR = ",\n";
 	/** @return JsString representation of the given argument, using the default separator. */
 	public static JsString forMap(Map<?,?> m) {
-		return forMap(m, DEFAULT_MAP_SEPARATOR);
+		return forMap(m, JsWriter.DEFAULT_MAP_SEPARATOR);
 	}
 	/** @return JsString representation of the given argument, using the given separator. */
 	public static JsString forMap(Map<?,?> m, String separator) {
-		StringBuilder sb = new StringBuilder("{");
-		String sep = "";
-		for (Map.Entry<?,?> entry : m.entrySet()) {
-			sb.append(sep).append(escapeStr(String.valueOf(entry.getKey())))
-			  .append(":").append(forObject(entry.getValue(), separator).getRawJs());
-			sep = separator;
+		StringBuilder sb = new StringBuilder();
+		try {
+			new JsWriter(sb).writeMap(m, separator);
+		} catch (IOException e) {
+			throw new AssertionError(e);
 		}
-		return new JsString(sb.append("}").toString());
+		return new JsString(sb.toString());
 	}
-	/** @return JsString representation of the given argument */
+	/**
+	 * @return JsString representation of the given argument. Large structures can be written
+	 * directly to a Writer with {@link JsWriter#writeObject(Object)} instead.
+	 */
 	public static JsString forObject(Object o) {
-		return forObject(o, DEFAULT_MAP_SEPARATOR);
-	}
-	/** @return JsString representation of the given argument */
-	private static JsString forObject(Object o, String mapSeparator) {
-		if (o instanceof Map) return forMap((Map)o, mapSeparator);
-		if (o instanceof Collection) return forArray((Collection)o);
-		if (o instanceof Number) return forNumber((Number)o);
-		if (o instanceof Boolean) return forBoolean((Boolean)o);
-		return forString(String.valueOf(o));
-	}
-	private static String escapeStr(String s) {
-		if (s==null) {
-			new RuntimeException("null string in js escape");
-			return "***THIS STRING WAS NULL***";
-		}
-		StringBuilder sb = new StringBuilder("'");
-		for (int i = 0; i < s.length(); i++) {
-			char c = s.charAt(i);
-			if (c >= 128 || !HtmlString.safeForHtml[c]) {
-				if (c<256)
-					sb.append(String.format("\\%03o", Integer.valueOf(c))); // see note below
-				else
-					sb.append(String.format("\\u%04x", Integer.valueOf(c)));
-			} else sb.append(c);
+		StringBuilder sb = new StringBuilder();
+		try {
+			new JsWriter(sb).writeObject(o);
+		} catch (IOException e) {
+			throw new AssertionError(e);
 		}
-		sb.append("'");
-		return sb.toString();
-	}	
-	// manual boxing of printf parameters above to avoid compiler bug ('unnecessary cast' warning that can't be disabled)
+		return new JsString(sb.toString());
+	}
 
 	@Implement public JsString subSequence(int arg0, int arg1) {
 		return new JsString(s.substring(arg0,arg1));
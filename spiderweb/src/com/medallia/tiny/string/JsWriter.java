@@ -0,0 +1,140 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny.string;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+import com.medallia.tiny.Encoding;
+
+/**
+ * Writes the JS representation of Java data structures (maps, collections, numbers,
+ * booleans and strings) directly to an {@link Appendable}, e.g. a StringBuilder or
+ * the Writer of a response, in a single pass. The output is the same as that of
+ * {@link JsString#forObject(Object)}.
+ */
+public class JsWriter {
+	
+	/** Default map separator. */
+	static final String DEFAULT_MAP_SEPARATOR = ",\n";
+	
+	/** the escape sequence for each char below 256 that must be escaped; null for the chars that are written as is */
+	private static final String[] ESCAPES = new String[256];
+	static {
+		for (int c = 0; c < ESCAPES.length; c++) {
+			if (c >= 128 || !HtmlString.safeForHtml[c]) {
+				// octal, since not all browsers support \x
+				ESCAPES[c] = "\\" + (char) ('0' + (c >> 6)) + (char) ('0' + ((c >> 3) & 7)) + (char) ('0' + (c & 7));
+			}
+		}
+	}
+	
+	private final Appendable out;
+	
+	public JsWriter(Appendable out) {
+		this.out = out;
+	}
+	
+	/** Write the given object; maps, collections, numbers and booleans are written as such, everything else as a string */
+	public JsWriter writeObject(Object o) throws IOException {
+		return writeObject(o, DEFAULT_MAP_SEPARATOR);
+	}
+	
+	/** Write the given object, using the given separator between the entries of maps */
+	public JsWriter writeObject(Object o, String mapSeparator) throws IOException {
+		if (o instanceof Map) return writeMap((Map<?, ?>) o, mapSeparator);
+		if (o instanceof Collection) return writeArray((Collection<?>) o);
+		if (o instanceof Number || o instanceof Boolean) {
+			out.append(o.toString());
+			return this;
+		}
+		return writeString(String.valueOf(o));
+	}
+	
+	/** Write the given map, using the given separator between its entries */
+	public JsWriter writeMap(Map<?, ?> m, String separator) throws IOException {
+		out.append('{');
+		String sep = "";
+		for (Map.Entry<?, ?> entry : m.entrySet()) {
+			out.append(sep);
+			writeString(String.valueOf(entry.getKey()));
+			out.append(':');
+			writeObject(entry.getValue(), separator);
+			sep = separator;
+		}
+		out.append('}');
+		return this;
+	}
+	
+	/** Write the given collection as an array */
+	public JsWriter writeArray(Collection<?> c) throws IOException {
+		out.append('[');
+		boolean first = true;
+		for (Object val : c) {
+			if (!first) out.append(',');
+			writeObject(val, DEFAULT_MAP_SEPARATOR);
+			first = false;
+		}
+		out.append(']');
+		return this;
+	}
+	
+	/** Write the given string as a quoted string literal */
+	public JsWriter writeString(String s) throws IOException {
+		if (s == null) {
+			out.append("***THIS STRING WAS NULL***");
+			return this;
+		}
+		out.append('\'');
+		int n = s.length();
+		// start of the run of chars not yet written that do not need escaping
+		int literalStart = 0;
+		for (int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if (c < 128 && ESCAPES[c] == null) continue;
+			
+			if (literalStart < i)
+				appendRange(s, literalStart, i);
+			literalStart = i + 1;
+			
+			if (c < 256) {
+				out.append(ESCAPES[c]);
+			} else {
+				out.append('\\').append('u')
+					.append(Encoding.HEX_DIGITS[c >> 12])
+					.append(Encoding.HEX_DIGITS[(c >> 8) & 0xf])
+					.append(Encoding.HEX_DIGITS[(c >> 4) & 0xf])
+					.append(Encoding.HEX_DIGITS[c & 0xf]);
+			}
+		}
+		if (literalStart < n)
+			appendRange(s, literalStart, n);
+		out.append('\'');
+		return this;
+	}
+	
+	private void appendRange(String s, int start, int end) throws IOException {
+		// Writer.append(CharSequence, int, int) creates a substring
+		if (out instanceof Writer)
+			((Writer) out).write(s, start, end - start);
+		else
+			out.append(s, start, end);
+	}
+
+}
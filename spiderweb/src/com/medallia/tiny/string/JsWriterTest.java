@@ -0,0 +1,71 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny.string;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.medallia.tiny.Empty;
+
+public class JsWriterTest extends TestCase {
+	
+	/** the string escaping done by {@link JsString} before {@link JsWriter} was added */
+	private static String formatEscape(String s) {
+		StringBuilder sb = new StringBuilder("'");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 128 || !HtmlString.safeForHtml[c]) {
+				if (c<256)
+					sb.append(String.format("\\%03o", Integer.valueOf(c)));
+				else
+					sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+			} else sb.append(c);
+		}
+		return sb.append("'").toString();
+	}
+	
+	public void testAllChars() throws Exception {
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			String s = "a" + (char) c + "b";
+			assertEquals("char " + c, formatEscape(s), JsString.forString(s).asString());
+		}
+		StringWriter w = new StringWriter();
+		new JsWriter(w).writeString("x<y☃");
+		assertEquals("'x\\074y\\u2603'", w.toString());
+	}
+	
+	public void testStructures() throws Exception {
+		Map<String, Object> inner = Empty.linkedHashMap();
+		inner.put("a", 1);
+		inner.put("b", true);
+		Map<Object, Object> m = Empty.linkedHashMap();
+		m.put("list", Arrays.asList("x", 2.5, inner));
+		m.put("map", inner);
+		m.put(null, null);
+		m.put("empty", Collections.emptyList());
+		
+		assertEquals("{'list':['x',2.5,{'a':1,\n'b':true}];'map':{'a':1;'b':true};'null':'null';'empty':[]}",
+				JsString.forMap(m, ";").asString());
+		assertEquals("[1,2,3]", JsString.forIntArray(Arrays.asList(1, 2, 3)).asString());
+		assertEquals("***THIS STRING WAS NULL***", JsString.forString(null).asString());
+	}
+
+}
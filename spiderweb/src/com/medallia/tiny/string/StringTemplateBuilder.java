@@ -22,7 +22,6 @@ import org.antlr.stringtemplate.AttributeRenderer;
 import org.antlr.stringtemplate.StringTemplate;
 import org.antlr.stringtemplate.StringTemplateErrorListener;
 import org.antlr.stringtemplate.language.DefaultTemplateLexer;
-import org.apache.commons.lang.StringEscapeUtils;
 
 import com.medallia.tiny.Empty;
 import com.medallia.tiny.Implement;
@@ -91,7 +90,7 @@ public class StringTemplateBuilder {
 		if (escapeHtml) {
 			st.registerRenderer(String.class, new SimpleAttributeRenderer() {
 				public String toString(Object o) {
-					return StringEscapeUtils.escapeHtml(String.valueOf(o));
+					return HtmlEscaper.HTML40.escape(String.valueOf(o));
 				}
 			});
 		}
@@ -0,0 +1,129 @@
+/*
+ * This file is part of the Spider Web Framework.
+ * 
+ * The Spider Web Framework is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Spider Web Framework is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Spider Web Framework.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.medallia.tiny.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * OutputStream that compresses the body of a response with the given content
+ * coding (gzip or deflate). The first bytes written are buffered; if the stream
+ * is closed before more than the threshold has been written, the content is
+ * sent uncompressed (with a Content-Length), since compressing it would gain little.
+ * <p>
+ * 
+ * Flushing the stream has no effect until the threshold is reached.
+ */
+public class CompressingResponseStream extends OutputStream {
+	
+	private final HttpServletResponse response;
+	private final String contentCoding;
+	
+	/** holds the content until the threshold is reached; null afterwards */
+	private byte[] buffer;
+	private int count;
+	
+	/** the stream the content is written to once the threshold is reached */
+	private OutputStream out;
+	
+	/**
+	 * @param contentCoding "gzip" or "deflate"
+	 * @param threshold minimum number of bytes in the response for it to be compressed
+	 */
+	public CompressingResponseStream(HttpServletResponse response, String contentCoding, int threshold) {
+		if (!"gzip".equals(contentCoding) && !"deflate".equals(contentCoding))
+			throw new IllegalArgumentException("Unsupported content coding " + contentCoding);
+		
+		this.response = response;
+		this.contentCoding = contentCoding;
+		this.buffer = new byte[threshold];
+	}
+	
+	@Override public void write(int b) throws IOException {
+		if (out == null && count < buffer.length) {
+			buffer[count++] = (byte) b;
+		} else {
+			if (out == null) startCompressing();
+			out.write(b);
+		}
+	}
+	
+	@Override public void write(byte[] b, int off, int len) throws IOException {
+		if (out == null) {
+			if (count + len <= buffer.length) {
+				System.arraycopy(b, off, buffer, count, len);
+				count += len;
+				return;
+			}
+			startCompressing();
+		}
+		out.write(b, off, len);
+	}
+	
+	private void startCompressing() throws IOException {
+		response.setHeader("Content-Encoding", contentCoding);
+		OutputStream raw = response.getOutputStream();
+		out = "gzip".equals(contentCoding) ? new GZIPOutputStream(raw) : new DeflaterOutputStream(raw);
+		writeBuffer();
+	}
+	
+	/** send what is buffered without compressing it */
+	private void startUncompressed() throws IOException {
+		out = response.getOutputStream();
+		writeBuffer();
+	}
+	
+	private void writeBuffer() throws IOException {
+		out.write(buffer, 0, count);
+		buffer = null;
+	}
+	
+	@Override public void flush() throws IOException {
+		if (out != null) out.flush();
+	}
+	
+	/**
+	 * Called instead of {@link #close()} if the content could not be completed. If nothing
+	 * has been sent yet the buffered content is discarded, so that a different response
+	 * (e.g. an error page) can be sent; otherwise the compressed stream is completed, since
+	 * the content already sent cannot be taken back.
+	 * 
+	 * @return true if the content was discarded, false if a truncated response was sent
+	 */
+	public boolean abort() throws IOException {
+		if (out == null) {
+			buffer = null;
+			count = 0;
+			return true;
+		}
+		out.close();
+		return false;
+	}
+	
+	@Override public void close() throws IOException {
+		if (out == null) {
+			response.setContentLength(count);
+			startUncompressed();
+		}
+		out.close();
+	}
+
+}
@@ -16,6 +16,7 @@
  */
 package com.medallia.tiny.web;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /** Http Response Header utilities */
@@ -43,5 +44,69 @@ public class HttpHeaders {
 		response.setHeader("Expires", "Mon, 1 Jan 2007 08:00:00 GMT");
 		response.setHeader("Cache-Control", "no-cache, must-revalidate");
 	}
+	
+	/**
+	 * @return true if the Accept-Encoding header of the request allows the given content
+	 * coding, e.g. "gzip", to be used, i.e. it is listed (or "*" is) without q=0.
+	 */
+	public static boolean acceptsEncoding(HttpServletRequest request, String contentCoding) {
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (acceptEncoding == null)
+			return false;
+		
+		Boolean accepted = null, acceptedByWildcard = null;
+		for (String s : acceptEncoding.split(",")) {
+			String[] parts = s.split(";");
+			String coding = parts[0].trim();
+			boolean nonZeroQ = true;
+			for (int i = 1; i < parts.length; i++) {
+				String p = parts[i].trim();
+				if (p.startsWith("q=")) {
+					try {
+						nonZeroQ = Float.parseFloat(p.substring(2)) > 0;
+					} catch (NumberFormatException e) {
+						// ignore malformed value
+					}
+				}
+			}
+			if (coding.equalsIgnoreCase(contentCoding))
+				accepted = nonZeroQ;
+			else if (coding.equals("*"))
+				acceptedByWildcard = nonZeroQ;
+		}
+		if (accepted != null)
+			return accepted;
+		return acceptedByWildcard != null && acceptedByWildcard;
+	}
+	
+	/**
+	 * @return true if the conditional headers of the request (If-None-Match, or If-Modified-Since
+	 * if that is not present) show that the client already has the current version of the
+	 * resource, i.e. a 304 (Not Modified) response should be sent.
+	 * 
+	 * @param etag the (quoted) entity tag of the resource
+	 * @param lastModified the time the resource was last modified in milliseconds
+	 */
+	public static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) tag = tag.substring(2);
+				if (tag.equals(etag) || tag.equals("*"))
+					return true;
+			}
+			return false;
+		}
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		} catch (IllegalArgumentException e) {
+			// malformed date; ignore the header
+			return false;
+		}
+		// HTTP dates have a resolution of one second
+		return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
 
 }
\ No newline at end of file
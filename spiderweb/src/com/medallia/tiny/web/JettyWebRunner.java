@@ -21,43 +21,110 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 
+import org.mortbay.jetty.AbstractConnector;
 import org.mortbay.jetty.Connector;
 import org.mortbay.jetty.Handler;
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.bio.SocketConnector;
 import org.mortbay.jetty.handler.DefaultHandler;
 import org.mortbay.jetty.handler.HandlerCollection;
+import org.mortbay.jetty.handler.StatisticsHandler;
+import org.mortbay.jetty.nio.SelectChannelConnector;
 import org.mortbay.jetty.webapp.WebAppContext;
+import org.mortbay.thread.QueuedThreadPool;
 
 /**
  * Class that uses Jetty to start the webapp located in the same
  * source tree as this class.
- *
+ * <p>
+ * 
+ * By default a selector based (NIO) connector is used, which does not need a
+ * thread per connection, with a bounded thread pool; see {@link Options} for
+ * the settings that can be changed.
  */
 public class JettyWebRunner {
 	
+	/** The settings of a {@link JettyWebRunner}; the setters return this object */
+	public static class Options {
+		private Integer port;
+		private boolean nio = true;
+		private int acceptors = 1;
+		private int acceptQueueSize = 0;
+		private int maxIdleTimeMs = 30000;
+		private int headerBufferSize = 4 * 1024;
+		private int requestBufferSize = 8 * 1024;
+		private int minThreads = 2;
+		private int maxThreads = 250;
+		private int gracefulShutdownMs = 5000;
+		
+		/** Set the port to listen on; the default is a random (free) port */
+		public Options port(int port) { this.port = port; return this; }
+		/** Set whether to use a selector based connector (the default) or a blocking connector with a thread per connection */
+		public Options nio(boolean nio) { this.nio = nio; return this; }
+		/** Set the number of threads accepting connections; the default is 1 */
+		public Options acceptors(int n) { this.acceptors = n; return this; }
+		/** Set the size of the queue of connections waiting to be accepted; the default of 0 uses the OS default */
+		public Options acceptQueueSize(int n) { this.acceptQueueSize = n; return this; }
+		/** Set the number of milliseconds an idle connection, e.g. one kept alive between requests, is kept open; the default is 30000 */
+		public Options maxIdleTimeMs(int ms) { this.maxIdleTimeMs = ms; return this; }
+		/** Set the size in bytes of the buffer for the request line and headers; the default is 4 KB */
+		public Options headerBufferSize(int bytes) { this.headerBufferSize = bytes; return this; }
+		/** Set the size in bytes of the buffer for the request body; the default is 8 KB */
+		public Options requestBufferSize(int bytes) { this.requestBufferSize = bytes; return this; }
+		/** Set the number of threads kept in the pool when idle; the default is 2 */
+		public Options minThreads(int n) { this.minThreads = n; return this; }
+		/** Set the maximum number of threads handling requests; requests are queued when all are busy. The default is 250 */
+		public Options maxThreads(int n) { this.maxThreads = n; return this; }
+		/** Set the maximum number of milliseconds {@link JettyWebRunner#stop()} waits for the requests in progress; the default is 5000 */
+		public Options gracefulShutdownMs(int ms) { this.gracefulShutdownMs = ms; return this; }
+	}
+	
 	private final Server server;
+	private final AbstractConnector connector;
+	/** counts the requests in progress, see {@link #stop()} */
+	private final StatisticsHandler statistics;
+	private final int gracefulShutdownMs;
 
 	/** constructor that uses a random port */
 	private JettyWebRunner() throws IOException {
-		this(null);
+		this(new Options());
 	}
-	/** If the input port is null, its value is fetched from the webapp config url. */
+	/** If the input port is null, a random (free) port is used. */
 	public JettyWebRunner(Integer port) throws IOException {
+		this(port == null ? new Options() : new Options().port(port));
+	}
+	/** constructor that uses the given settings */
+	public JettyWebRunner(Options options) throws IOException {
 		server = new Server();
+		gracefulShutdownMs = options.gracefulShutdownMs;
+		
+		QueuedThreadPool threadPool = new QueuedThreadPool();
+		threadPool.setMinThreads(options.minThreads);
+		threadPool.setMaxThreads(options.maxThreads);
+		server.setThreadPool(threadPool);
 		
 		// override so we can allocate the socket right away - we need to
 		// know the port we get before we start the webapp (unfortunately,
 		// see WebappConfig.overrideGlobalServerURI() )
-		SocketConnector connector = new SocketConnector() {
-			private boolean init = false;
-			@Override public void open() throws IOException {
-				if (init) return;
-				super.open();
-				init = true;
-			}
-		};
-		if (port != null) connector.setPort(port);
+		if (options.nio) {
+			// SelectChannelConnector.open() does nothing if the socket is already open
+			connector = new SelectChannelConnector();
+		} else {
+			connector = new SocketConnector() {
+				private boolean init = false;
+				@Override public void open() throws IOException {
+					if (init) return;
+					super.open();
+					init = true;
+				}
+			};
+		}
+		if (options.port != null) connector.setPort(options.port);
+		connector.setAcceptors(options.acceptors);
+		connector.setAcceptQueueSize(options.acceptQueueSize);
+		connector.setMaxIdleTime(options.maxIdleTimeMs);
+		connector.setHeaderBufferSize(options.headerBufferSize);
+		connector.setRequestBufferSize(options.requestBufferSize);
 		connector.open();
 		server.setConnectors(new Connector[] { connector });
 		
@@ -72,7 +139,9 @@ public class JettyWebRunner {
 		HandlerCollection handlers = new HandlerCollection();
 		handlers.setHandlers(new Handler[]{ webappcontext, new DefaultHandler() });		
 		
-		server.setHandler(handlers);
+		statistics = new StatisticsHandler();
+		statistics.setHandler(handlers);
+		server.setHandler(statistics);
 	}
 
 	/** @return the root of the 'web' folder of the .war file; assumes that this directory
@@ -131,9 +200,18 @@ public class JettyWebRunner {
 		server.join();
 	}
 	
-	/** stop jetty */
+	/**
+	 * stop jetty; new connections are refused right away, and the requests in
+	 * progress are given up to {@link Options#gracefulShutdownMs(int)} to complete
+	 */
 	public void stop() throws Exception {
 		System.out.println("Stopping webapp");
+		connector.close();
+		long deadline = System.currentTimeMillis() + gracefulShutdownMs;
+		while (statistics.getRequestsActive() > 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		if (statistics.getRequestsActive() > 0)
+			System.out.println(statistics.getRequestsActive() + " requests still in progress");
 		server.stop();
 		System.out.println("Webapp is stopped");
 	}